@@ -1,57 +1,68 @@
 package com.googlecode.jcompilo;
 
-import com.googlecode.totallylazy.Bytes;
-import com.googlecode.totallylazy.Closeables;
 import com.googlecode.totallylazy.io.Destination;
 import com.googlecode.totallylazy.Runnables;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
 
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static com.googlecode.jcompilo.BuildExecutor.bufferBytes;
+import static com.googlecode.jcompilo.BuildExecutor.buildExecutor;
 
-public class BackgroundDestination implements Destination {
+public class BackgroundDestination implements ByteBufferDestination {
     private final Destination destination;
-    private final ExecutorService executor;
+    private final BuildExecutor.Batch batch;
 
-    private BackgroundDestination(Destination destination, ExecutorService executor) {
-        this.executor = executor;
+    private BackgroundDestination(Destination destination, BuildExecutor.Batch batch) {
+        this.batch = batch;
         this.destination = destination;
     }
 
-    public static BackgroundDestination backgroundDestination(Destination destination) {
-        return backgroundDestination(destination, newSingleThreadExecutor());
+    public static BackgroundDestination backgroundDestination(Environment env, Destination destination) {
+        return backgroundDestination(destination, buildExecutor(env).batch(bufferBytes(env)));
     }
 
-    public static BackgroundDestination backgroundDestination(Destination destination, ExecutorService executor) {
-        return new BackgroundDestination(destination, executor);
+    public static BackgroundDestination backgroundDestination(Destination destination, BuildExecutor.Batch batch) {
+        return new BackgroundDestination(destination, batch);
     }
 
     @Override
     public OutputStream destination(final String name, final Date modified) throws IOException {
-        return new ByteArrayOutputStream() {
+        return new OutputBuffer() {
             @Override
             public void close() throws IOException {
-                executor.submit(toDestination(name, modified, toByteArray()));
+                BackgroundDestination.this.write(name, modified, buffer());
             }
-
         };
     }
 
-    private Callable<Void> toDestination(final String name, final Date modified, final byte[] value) {
+    @Override
+    public void write(String name, Date modified, ByteBuffer buffer) throws IOException {
+        batch.execute(buffer.remaining(), toDestination(name, modified, buffer));
+    }
+
+    private Callable<Void> toDestination(final String name, final Date modified, final ByteBuffer buffer) {
         return () -> {
-            Closeables.using(destination.destination(name, modified), Bytes.write(value));
+            if (destination instanceof ByteBufferDestination) {
+                ((ByteBufferDestination) destination).write(name, modified, buffer);
+            } else {
+                synchronized (destination) {
+                    ByteBufferDestination.methods.write(destination, name, modified, buffer);
+                }
+            }
             return Runnables.VOID;
         };
     }
 
     @Override
     public void close() throws IOException {
-        BackgroundOutputs.close(executor);
-        destination.close();
+        try {
+            batch.close();
+        } finally {
+            destination.close();
+        }
     }
-}
\ No newline at end of file
+}
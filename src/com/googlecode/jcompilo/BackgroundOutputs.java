@@ -2,41 +2,45 @@ package com.googlecode.jcompilo;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+
+import static com.googlecode.jcompilo.BuildExecutor.bufferBytes;
+import static com.googlecode.jcompilo.BuildExecutor.buildExecutor;
 
 public class BackgroundOutputs implements Outputs, Closeable {
-    private final Environment env;
     private final Outputs outputs;
-    private final ExecutorService service;
+    private final BuildExecutor.Batch batch;
+    private final Metrics metrics;
+    private final String stage;
 
-    private BackgroundOutputs(Environment env, Outputs outputs) {
-        this.env = env;
+    private BackgroundOutputs(Outputs outputs, BuildExecutor.Batch batch, Metrics metrics, String stage) {
         this.outputs = outputs;
-        service = Executors.newFixedThreadPool(Compiler.CPUS);
+        this.batch = batch;
+        this.metrics = metrics;
+        this.stage = stage;
     }
 
     public static BackgroundOutputs backgroundOutputs(Environment env, Outputs outputs) {
-        return new BackgroundOutputs(env, outputs);
+        return backgroundOutputs(env, "output", buildExecutor(env), outputs);
+    }
+
+    public static BackgroundOutputs backgroundOutputs(Environment env, String stage, BuildExecutor executor, Outputs outputs) {
+        return new BackgroundOutputs(outputs, executor.batch(bufferBytes(env)), env.metrics(), stage);
     }
 
     @Override
     public void close() throws IOException {
-        close(service);
+        batch.close();
     }
 
     @Override
     public void put(final Resource resource) {
-        service.execute(() -> outputs.put(resource));
-    }
-
-    public static void close(ExecutorService service1) {
-        try {
-            service1.shutdown();
-            service1.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
-        } catch (InterruptedException e) {
-            throw new UnsupportedOperationException(e);
-        }
+        long size = Resource.methods.heapSize(resource);
+        batch.execute(size, () -> {
+            outputs.put(resource);
+            return null;
+        });
+        int depth = batch.pending();
+        metrics.record(stage + "_queue_depth", depth);
+        metrics.max(stage + "_queue_peak", depth);
     }
 }
@@ -11,6 +11,7 @@ import com.googlecode.yadic.SimpleContainer;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Method;
 import java.net.URI;
@@ -25,6 +26,8 @@ import static com.googlecode.jcompilo.CompileProcessor.compile;
 import static com.googlecode.jcompilo.Compiler.iterableSource;
 import static com.googlecode.jcompilo.Environment.constructors.environment;
 import static com.googlecode.jcompilo.Resource.functions.bytes;
+import static com.googlecode.jcompilo.daemon.BuildClient.buildClient;
+import static com.googlecode.jcompilo.daemon.BuildDaemon.buildDaemon;
 import static com.googlecode.shavenmaven.Dependencies.load;
 import static com.googlecode.totallylazy.Arrays.empty;
 import static com.googlecode.totallylazy.Files.directory;
@@ -49,6 +52,7 @@ import static com.googlecode.totallylazy.Runnables.printLine;
 import static com.googlecode.totallylazy.Sequences.one;
 import static com.googlecode.totallylazy.Sequences.sequence;
 import static com.googlecode.totallylazy.Strings.endsWith;
+import static java.lang.Boolean.parseBoolean;
 import static java.lang.String.format;
 import static java.lang.System.nanoTime;
 import static java.lang.reflect.Modifier.PUBLIC;
@@ -64,7 +68,22 @@ public class BootStrap {
     }
 
     public static void main(String[] args) throws Exception {
-        System.exit(new BootStrap(environment()).build(list(args)));
+        List<String> targets = list(args);
+        Environment env = environment();
+        if (targets.contains("-daemon")) {
+            buildDaemon(env).run();
+            return;
+        }
+        if (daemon(env)) {
+            Option<Integer> exitCode = buildClient(env).build(targets);
+            if (!exitCode.isEmpty()) System.exit(exitCode.get());
+            env.out().println("daemon: not running, building locally");
+        }
+        System.exit(new BootStrap(env).build(targets));
+    }
+
+    private static boolean daemon(Environment env) {
+        return parseBoolean(env.properties().getProperty("jcompilo.daemon"));
     }
 
     public int build(List<String> targets) {
@@ -118,6 +137,20 @@ public class BootStrap {
         env.out().println();
         env.out().println("BUILD " + message);
         env.out().printf("Total time: %s seconds%n", calculateSeconds(start));
+        exportMetrics(start);
+    }
+
+    private void exportMetrics(long start) {
+        env.metrics().gauge("build_milliseconds", (nanoTime() - start) / 1000000);
+        String path = env.properties().getProperty("jcompilo.metrics.dir");
+        try {
+            env.trace().write();
+            if (path == null || path.isEmpty()) return;
+            File directory = new File(path);
+            env.metrics().export(directory.isAbsolute() ? directory : new File(env.workingDirectory(), path));
+        } catch (IOException e) {
+            env.out().printf("Unable to write metrics: %s%n", e.getMessage());
+        }
     }
 
     private long calculateSeconds(long start) {
@@ -8,6 +8,9 @@ public interface Build extends Locations, Identifiers {
     boolean compile() throws Exception;
     boolean test() throws Exception;
     boolean Package() throws Exception;
+    default boolean watch() throws Exception {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support watch");
+    }
 
     Iterable<CompileOption> compileOptions();
     Iterable<File> dependencies();
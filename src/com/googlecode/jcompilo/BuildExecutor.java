@@ -0,0 +1,152 @@
+package com.googlecode.jcompilo;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+public class BuildExecutor {
+    public static final long DEFAULT_BUFFER = 64;
+    public static final String BUILD = "build";
+    public static final String POST_PROCESS = "post-process";
+    private static final Map<String, BuildExecutor> executors = new ConcurrentHashMap<String, BuildExecutor>();
+    private final ForkJoinPool pool;
+
+    private BuildExecutor(String name, int threads) {
+        pool = new ForkJoinPool(threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = new ForkJoinWorkerThread(forkJoinPool) {
+            };
+            thread.setName("jcompilo-" + name + "-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, true);
+    }
+
+    public static BuildExecutor buildExecutor(int threads) {
+        return buildExecutor(BUILD, threads);
+    }
+
+    public static BuildExecutor buildExecutor(String name, int threads) {
+        return executors.computeIfAbsent(name + ":" + threads, key -> new BuildExecutor(name, threads));
+    }
+
+    public static BuildExecutor buildExecutor(Environment env) {
+        return buildExecutor(threads(env));
+    }
+
+    public static BuildExecutor postProcessExecutor(Environment env) {
+        return buildExecutor(POST_PROCESS, threads(env));
+    }
+
+    public static int threads(Environment env) {
+        return threads(env.properties());
+    }
+
+    public static int threads(Properties properties) {
+        return Integer.parseInt(properties.getProperty("jcompilo.threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    }
+
+    public static long bufferBytes(Environment env) {
+        return Long.parseLong(env.properties().getProperty("jcompilo.output.buffer", String.valueOf(DEFAULT_BUFFER))) * 1024 * 1024;
+    }
+
+    public <T> Future<T> submit(Callable<T> callable) {
+        return pool.submit(callable);
+    }
+
+    public Batch batch(long maximumBytes) {
+        return new Batch(maximumBytes);
+    }
+
+    public class Batch implements Closeable {
+        private final long maximumBytes;
+        private long bytes;
+        private int pending;
+        private Throwable failure;
+
+        private Batch(long maximumBytes) {
+            this.maximumBytes = maximumBytes;
+        }
+
+        public void execute(final long size, final Callable<?> task) {
+            await(() -> available(size), () -> reserve(size));
+            pool.execute(() -> {
+                try {
+                    task.call();
+                } catch (Throwable e) {
+                    failed(e);
+                } finally {
+                    release(size);
+                }
+            });
+        }
+
+        private boolean available(long size) {
+            return failure != null || pending == 0 || bytes + size <= maximumBytes;
+        }
+
+        private void reserve(long size) {
+            if (failure != null) throw new JCompiloException(failure);
+            bytes += size;
+            pending++;
+        }
+
+        private synchronized void release(long size) {
+            bytes -= size;
+            pending--;
+            notifyAll();
+        }
+
+        private synchronized void failed(Throwable e) {
+            if (failure == null) failure = e;
+        }
+
+        public synchronized int pending() {
+            return pending;
+        }
+
+        private boolean finished() {
+            return pending == 0;
+        }
+
+        @Override
+        public void close() {
+            await(this::finished, () -> {
+            });
+            synchronized (this) {
+                if (failure != null) throw new JCompiloException(failure);
+            }
+        }
+
+        private void await(final BooleanSupplier condition, final Runnable then) {
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    private volatile boolean done;
+
+                    @Override
+                    public boolean block() throws InterruptedException {
+                        synchronized (Batch.this) {
+                            while (!condition.getAsBoolean()) Batch.this.wait();
+                            then.run();
+                        }
+                        done = true;
+                        return true;
+                    }
+
+                    @Override
+                    public boolean isReleasable() {
+                        return done;
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JCompiloException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.googlecode.jcompilo;
+
+import com.googlecode.totallylazy.io.Destination;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+public interface ByteBufferDestination extends Destination {
+    void write(String name, Date modified, ByteBuffer buffer) throws IOException;
+
+    class methods {
+        public static void write(Destination destination, String name, Date modified, ByteBuffer buffer) throws IOException {
+            if (destination instanceof ByteBufferDestination) {
+                ((ByteBufferDestination) destination).write(name, modified, buffer);
+                return;
+            }
+            try (OutputStream output = destination.destination(name, modified)) {
+                write(buffer, output);
+            }
+        }
+
+        public static void write(ByteBuffer buffer, OutputStream output) throws IOException {
+            if (buffer.hasArray()) {
+                output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                return;
+            }
+            byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+            ByteBuffer source = buffer.duplicate();
+            while (source.hasRemaining()) {
+                int length = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, length);
+                output.write(chunk, 0, length);
+            }
+        }
+    }
+}
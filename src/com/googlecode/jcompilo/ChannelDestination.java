@@ -0,0 +1,57 @@
+package com.googlecode.jcompilo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+public class ChannelDestination implements ByteBufferDestination {
+    private final File directory;
+
+    private ChannelDestination(File directory) {
+        this.directory = directory;
+    }
+
+    public static ChannelDestination channelDestination(File directory) {
+        return new ChannelDestination(directory);
+    }
+
+    @Override
+    public void write(String name, Date modified, ByteBuffer buffer) throws IOException {
+        File file = file(name);
+        try (FileChannel channel = FileChannel.open(file.toPath(), CREATE, TRUNCATE_EXISTING, WRITE)) {
+            ByteBuffer source = buffer.duplicate();
+            while (source.hasRemaining()) channel.write(source);
+        }
+        file.setLastModified(modified.getTime());
+    }
+
+    @Override
+    public OutputStream destination(String name, final Date modified) throws IOException {
+        final File file = file(name);
+        return new FileOutputStream(file) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                file.setLastModified(modified.getTime());
+            }
+        };
+    }
+
+    private File file(String name) {
+        File file = new File(directory, name);
+        file.getParentFile().mkdirs();
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+}
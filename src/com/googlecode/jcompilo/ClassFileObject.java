@@ -0,0 +1,50 @@
+package com.googlecode.jcompilo;
+
+import javax.tools.SimpleJavaFileObject;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.googlecode.jcompilo.MoveToTL.classNameForByteCode;
+
+public class ClassFileObject extends SimpleJavaFileObject {
+    private final Resource resource;
+
+    private ClassFileObject(Resource resource) {
+        super(resource.uri().toURI(), Kind.CLASS);
+        this.resource = resource;
+    }
+
+    public static ClassFileObject classFileObject(Resource resource) {
+        return new ClassFileObject(resource);
+    }
+
+    public String binaryName() {
+        return classNameForByteCode(resource.name());
+    }
+
+    public String packageName() {
+        String name = binaryName();
+        int index = name.lastIndexOf('.');
+        return index < 0 ? "" : name.substring(0, index);
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+        return resource.input();
+    }
+
+    @Override
+    public long getLastModified() {
+        return resource.lastModified();
+    }
+
+    @Override
+    public String getName() {
+        return resource.name();
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
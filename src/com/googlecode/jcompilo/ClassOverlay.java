@@ -0,0 +1,81 @@
+package com.googlecode.jcompilo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.googlecode.jcompilo.MemoryStore.memoryStore;
+import static com.googlecode.jcompilo.Resource.constructors.resource;
+
+public class ClassOverlay implements Inputs {
+    private final File directory;
+    private final MemoryStore classes;
+
+    private ClassOverlay(File directory, MemoryStore classes) {
+        this.directory = directory;
+        this.classes = classes;
+    }
+
+    public static ClassOverlay classOverlay(File directory, MemoryStore classes) {
+        return new ClassOverlay(directory, classes);
+    }
+
+    public static Inputs overlay(Inputs classes, MemoryStore overlay) {
+        if (!(classes instanceof ClassOverlay)) {
+            Inputs.methods.copy(classes, overlay);
+            return overlay;
+        }
+        ClassOverlay existing = (ClassOverlay) classes;
+        Inputs.methods.copy(existing.classes, overlay);
+        return classOverlay(existing.directory, overlay);
+    }
+
+    public File directory() {
+        return directory;
+    }
+
+    public MemoryStore classes() {
+        return classes;
+    }
+
+    public List<Resource> list(String packageName, boolean recurse) {
+        List<Resource> result = new ArrayList<Resource>();
+        String path = packageName.replace('.', '/');
+        list(new File(directory, path), path.isEmpty() ? "" : path + "/", recurse, result);
+        return result;
+    }
+
+    private void list(File folder, String prefix, boolean recurse, List<Resource> result) {
+        File[] files = folder.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = prefix + file.getName();
+            if (file.isDirectory()) {
+                if (recurse) list(file, name + "/", true, result);
+            } else if (name.endsWith(".class") && !classes.data().containsKey(name)) {
+                result.add(resource(file, name, file.lastModified()));
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Resource ignored : this) size++;
+        return size;
+    }
+
+    @Override
+    public Iterator<Resource> iterator() {
+        MemoryStore result = memoryStore();
+        Inputs.methods.copy(list("", true), result);
+        Inputs.methods.copy(classes, result);
+        return result.iterator();
+    }
+}
@@ -7,16 +7,31 @@ import com.googlecode.totallylazy.Option;
 import com.googlecode.totallylazy.Sequence;
 import com.googlecode.totallylazy.io.Sources;
 
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
 import java.io.File;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 
+import static com.googlecode.jcompilo.BuildExecutor.buildExecutor;
 import static com.googlecode.jcompilo.CompileOption.Debug;
 import static com.googlecode.jcompilo.CompileOption.Implicit;
 import static com.googlecode.jcompilo.CompileOption.Implicit.None;
+import static com.googlecode.jcompilo.MemoryStore.memoryStore;
+import static com.googlecode.jcompilo.shards.Shards.shards;
 import static com.googlecode.totallylazy.Closeables.using;
+import static com.googlecode.totallylazy.Option.none;
+import static com.googlecode.totallylazy.Option.some;
 import static com.googlecode.totallylazy.Sequences.sequence;
 
 public class CompileProcessor implements Processor {
@@ -36,7 +51,7 @@ public class CompileProcessor implements Processor {
     }
 
     public static CompileProcessor compile(final Environment env, final Iterable<CompileOption> options, final JavaCompiler compiler, Iterable<File> dependancies, Option<DiagnosticListener<JavaFileObject>> diagnosticListener) {
-        return compile(env, options, compiler, new CompilerResources(compiler, dependancies), diagnosticListener);
+        return compile(env, options, compiler, new CompilerResources(compiler, dependancies, sequence(options).flatMap(Callables.<Iterable<String>>value())), diagnosticListener);
     }
 
     public static CompileProcessor compile(final Environment env, final Iterable<CompileOption> options, final JavaCompiler compiler, final CompilerResources resources, final Option<DiagnosticListener<JavaFileObject>> diagnosticListener) {
@@ -50,12 +65,117 @@ public class CompileProcessor implements Processor {
 
     @Override
     public boolean process(Inputs sources, Outputs outputs) throws Exception {
+        return process(sources, memoryStore(), outputs);
+    }
+
+    public boolean process(Inputs sources, Inputs classes, Outputs outputs) throws Exception {
+        return process(sources, classes, outputs, Profile.none());
+    }
+
+    public boolean process(Inputs sources, Inputs classes, Outputs outputs, Profile profile) throws Exception {
         env.out().prefix("    [javac] ");
-        env.out().printf("Compiling %s source files%n", sources.size());
-        Boolean success = compiler.getTask(new OutputStreamWriter(env.out()), resources.output(outputs), diagnosticListener.getOrNull(), options.flatMap(Callables.<Iterable<String>>value()), null, javaFileObjects(sources)).call();
-        env.out().clearPrefix();
-        if (!success) env.out().println("Compile failed");
-        return success;
+        try {
+            int shards = threads();
+            List<List<Inputs>> waves = shards > 1 ? shards(sources).waves(shards) : Collections.<List<Inputs>>emptyList();
+            if (waves.size() > 1 || (waves.size() == 1 && waves.get(0).size() > 1)) {
+                env.out().printf("Compiling %s source files in %s waves on %s threads%n", sources.size(), waves.size(), shards);
+                Set<String> written = ConcurrentHashMap.newKeySet();
+                Option<Boolean> sharded = sharded(waves, classes, outputs, written, profile);
+                if (!sharded.isEmpty()) {
+                    if (!sharded.get()) env.out().println("Compile failed");
+                    return sharded.get();
+                }
+                env.out().println("Sharded compile could not resolve symbols across shards, compiling all sources together");
+                outputs = unwritten(outputs, written);
+            } else {
+                env.out().printf("Compiling %s source files%n", sources.size());
+            }
+            boolean success = compile(sources, classes, outputs, new OutputStreamWriter(env.out()), diagnosticListener.getOrNull(), profile);
+            if (!success) env.out().println("Compile failed");
+            return success;
+        } finally {
+            env.out().clearPrefix();
+        }
+    }
+
+    private boolean compile(Inputs sources, Inputs classes, Outputs outputs, Writer writer, DiagnosticListener<? super JavaFileObject> listener, Profile profile) throws Exception {
+        try (Trace.Span ignored = env.trace().span("javac", String.format("javac %s files", sources.size())); FileManagers fileManagers = resources.fileManagers()) {
+            return profile.listen(compiler.getTask(writer, resources.output(fileManagers, outputs, classes), listener, options.flatMap(Callables.<Iterable<String>>value()), null, javaFileObjects(sources))).call();
+        }
+    }
+
+    private Option<Boolean> sharded(List<List<Inputs>> waves, Inputs classes, final Outputs outputs, final Set<String> written, Profile profile) throws Exception {
+        final MemoryStore overlay = memoryStore();
+        final Inputs visible = ClassOverlay.overlay(classes, overlay);
+        final Outputs streamed = resource -> {
+            if (resource.name().endsWith(".class")) overlay.put(resource);
+            written.add(resource.name());
+            outputs.put(resource);
+        };
+        BuildExecutor executor = buildExecutor(env);
+        for (List<Inputs> wave : waves) {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            List<StringWriter> writers = new ArrayList<StringWriter>();
+            List<DiagnosticCollector<JavaFileObject>> diagnostics = new ArrayList<DiagnosticCollector<JavaFileObject>>();
+            for (final Inputs shard : wave) {
+                final StringWriter writer = new StringWriter();
+                final DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<JavaFileObject>();
+                writers.add(writer);
+                diagnostics.add(collector);
+                results.add(executor.submit(() -> compile(shard, visible, streamed, writer, collector, profile)));
+            }
+            List<Boolean> unresolved = new ArrayList<Boolean>();
+            boolean success = true, genuine = false;
+            for (int i = 0; i < results.size(); i++) {
+                boolean failed = !results.get(i).get();
+                unresolved.add(failed && unresolvedOnly(diagnostics.get(i)));
+                success &= !failed;
+                genuine |= failed && !unresolved.get(i);
+            }
+            if (!success && !genuine) return none();
+            for (int i = 0; i < results.size(); i++) {
+                if (!unresolved.get(i)) report(writers.get(i), diagnostics.get(i));
+            }
+            if (!success) return some(false);
+        }
+        return some(true);
+    }
+
+    private void report(StringWriter writer, DiagnosticCollector<JavaFileObject> collector) {
+        env.out().print(writer);
+        for (Diagnostic<? extends JavaFileObject> diagnostic : collector.getDiagnostics()) {
+            if (diagnosticListener.isEmpty()) env.out().println(diagnostic);
+            else diagnosticListener.get().report(diagnostic);
+        }
+    }
+
+    private static boolean unresolvedOnly(DiagnosticCollector<JavaFileObject> collector) {
+        boolean unresolved = false;
+        for (Diagnostic<? extends JavaFileObject> diagnostic : collector.getDiagnostics()) {
+            if (diagnostic.getKind() != Diagnostic.Kind.ERROR) continue;
+            String code = String.valueOf(diagnostic.getCode());
+            if (!code.startsWith("compiler.err.cant.resolve") && !code.equals("compiler.err.doesnt.exist")) return false;
+            unresolved = true;
+        }
+        return unresolved;
+    }
+
+    private static Outputs unwritten(final Outputs outputs, final Set<String> written) {
+        return resource -> {
+            if (!written.contains(resource.name())) outputs.put(resource);
+        };
+    }
+
+    private int threads() {
+        return Integer.parseInt(env.properties().getProperty("jcompilo.compile.shards", "1"));
+    }
+
+    public Sequence<CompileOption> options() {
+        return options;
+    }
+
+    public Sequence<File> dependencies() {
+        return resources.dependencies();
     }
 
     private Sequence<JavaFileObject> javaFileObjects(Inputs javaFiles) {
@@ -66,4 +186,9 @@ public class CompileProcessor implements Processor {
     public boolean matches(String other) {
         return Compiler.JAVA_FILES.matches(other);
     }
+
+    @Override
+    public Set<String> extensions() {
+        return Collections.singleton(".java");
+    }
 }
@@ -1,13 +1,18 @@
 package com.googlecode.jcompilo;
 
 import com.googlecode.jcompilo.asm.AsmMethodHandler;
+import com.googlecode.jcompilo.asm.AsmResourceHandler;
+import com.googlecode.jcompilo.cache.BuildCache;
+import com.googlecode.jcompilo.cache.CacheKey;
+import com.googlecode.jcompilo.incremental.DependencyGraph;
+import com.googlecode.jcompilo.incremental.Target;
+import com.googlecode.jcompilo.snapshot.Snapshot;
 import com.googlecode.jcompilo.tool.JCompiler;
 import com.googlecode.totallylazy.*;
 import com.googlecode.totallylazy.collections.PersistentList;
-import com.googlecode.totallylazy.functions.Curried2;
+import com.googlecode.totallylazy.functions.Callables;
 import com.googlecode.totallylazy.functions.Function1;
 import com.googlecode.totallylazy.io.Destination;
-import com.googlecode.totallylazy.io.FileDestination;
 import com.googlecode.totallylazy.io.Source;
 import com.googlecode.totallylazy.io.Sources;
 import com.googlecode.totallylazy.predicates.Predicate;
@@ -16,34 +21,50 @@ import jdk.internal.org.objectweb.asm.Type;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.jar.JarOutputStream;
-import java.util.zip.ZipOutputStream;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Future;
 
 import static com.googlecode.jcompilo.BackgroundDestination.backgroundDestination;
 import static com.googlecode.jcompilo.BackgroundOutputs.backgroundOutputs;
+import static com.googlecode.jcompilo.BuildExecutor.buildExecutor;
+import static com.googlecode.jcompilo.BuildExecutor.postProcessExecutor;
+import static com.googlecode.jcompilo.ClassOverlay.classOverlay;
 import static com.googlecode.jcompilo.MemoryStore.memoryStore;
-import static com.googlecode.jcompilo.ModifiedPredicate.modifiedMatches;
 import static com.googlecode.jcompilo.Outputs.constructors.output;
+import static com.googlecode.jcompilo.Profile.profile;
+import static com.googlecode.jcompilo.Resource.constructors.resource;
 import static com.googlecode.jcompilo.ResourceHandler.methods.decorate;
 import static com.googlecode.jcompilo.asm.AsmResourceHandler.asmResourceHandler;
+import static com.googlecode.jcompilo.cache.BuildCache.buildCache;
+import static com.googlecode.jcompilo.cache.CacheKey.cacheKey;
+import static com.googlecode.jcompilo.incremental.DependencyGraph.dependencyGraph;
+import static com.googlecode.jcompilo.incremental.DependencyGraph.graphFile;
+import static com.googlecode.jcompilo.incremental.ManifestTarget.manifestFile;
+import static com.googlecode.jcompilo.incremental.ManifestTarget.manifestTarget;
+import static com.googlecode.jcompilo.incremental.MeteredTarget.meteredTarget;
+import static com.googlecode.jcompilo.incremental.Target.constructors.archive;
+import static com.googlecode.jcompilo.incremental.Target.constructors.target;
+import static com.googlecode.jcompilo.snapshot.Snapshot.snapshot;
+import static com.googlecode.jcompilo.snapshot.Snapshot.snapshotFile;
 import static com.googlecode.jcompilo.tco.TailRecHandler.tailRecHandler;
+import static com.googlecode.jcompilo.zip.ZipWriter.level;
 import static com.googlecode.totallylazy.Closeables.using;
-import static com.googlecode.totallylazy.functions.Functions.andPair;
-import static com.googlecode.totallylazy.io.FileSource.fileSource;
-import static com.googlecode.totallylazy.Files.isFile;
-import static com.googlecode.totallylazy.Files.recursiveFiles;
 import static com.googlecode.totallylazy.functions.Functions.and;
 import static com.googlecode.totallylazy.predicates.Predicates.not;
 import static com.googlecode.totallylazy.predicates.Predicates.or;
 import static com.googlecode.totallylazy.Sequences.sequence;
 import static com.googlecode.totallylazy.Strings.endsWith;
 import static com.googlecode.totallylazy.Strings.startsWith;
-import static com.googlecode.totallylazy.io.ZipDestination.zipDestination;
 import static com.googlecode.totallylazy.collections.PersistentList.constructors;
 import static java.lang.Boolean.parseBoolean;
 import static java.lang.String.format;
@@ -82,7 +103,7 @@ public class Compiler {
     }
 
     public static Compiler compiler(Environment env, Iterable<File> dependancies, Iterable<CompileOption> compileOptions, JavaCompiler javaCompiler, Option<DiagnosticListener<JavaFileObject>> diagnosticListener) {
-        CompilerResources resources = new CompilerResources(javaCompiler, dependancies);
+        CompilerResources resources = new CompilerResources(javaCompiler, dependancies, sequence(compileOptions).flatMap(Callables.<Iterable<String>>value()));
         return compiler(env).
                 add(CompileProcessor.compile(env, compileOptions, javaCompiler, resources, diagnosticListener)).
                 add(CopyProcessor.copy(env, not(or(startsWith("."), JAVA_FILES)))).
@@ -91,7 +112,7 @@ public class Compiler {
 
     private static Sequence<Pair<Type, AsmMethodHandler>> asmProcessors(Environment env) {
         return postProcess(env) ?
-                sequence(Pair.<Type, AsmMethodHandler>pair(tailRecAnnotation(env), tailRecHandler())) :
+                sequence(Pair.<Type, AsmMethodHandler>pair(tailRecAnnotation(env), tailRecHandler(tailRecAnnotation(env)))) :
                 Sequences.<Pair<Type, AsmMethodHandler>>empty();
     }
 
@@ -117,50 +138,241 @@ public class Compiler {
     }
 
     public boolean compile(final File sourceDirectory, final File destination) throws Exception {
-        Sources source = fileSource(sourceDirectory, recursiveFiles(sourceDirectory).filter(not(isFile().and(modifiedMatches(sourceDirectory, destination)))).realise());
-        return source.sources().isEmpty() || using(source, backgroundDestination(destination(destination)), new Curried2<Sources, Destination, Boolean>() {
-            public Boolean call(final Sources source, Destination destination) throws Exception {
-                return compile(memoryStore(source), output(destination));
+        final File graphFile = graphFile(destination);
+        final DependencyGraph graph = dependencyGraph(graphFile);
+        final File snapshotFile = snapshotFile(destination);
+        final Snapshot previous = Snapshot.load(snapshotFile);
+        final Snapshot files = snapshot(sourceDirectory, previous);
+        snapshotFile.delete();
+        env.metrics().increment("files_scanned", files.names().size());
+
+        final Target target = outputTarget(destination);
+        try (Closeable ignored = env.trace().closing("write", destination.getName(), target); final MemoryStore classes = memoryStore(env)) {
+            Set<String> unchanged = new HashSet<String>(files.names());
+            unchanged.removeAll(files.changed(previous));
+            final Set<String> changed = graph.changed(files.modified(), classpath(), unchanged);
+            changed.addAll(graph.missing(target));
+            if (changed.isEmpty()) {
+                files.save(snapshotFile);
+                return true;
+            }
+
+            final Set<String> retained = graph.outputs();
+            final Inputs visible = archive(destination) ? classes : classOverlay(destination, classes);
+            if (archive(destination)) {
+                Inputs.methods.copy(target.classes(retained), classes);
+                env.out().prefix("      [zip] ").printf("Updating: %s%n", destination.getAbsoluteFile());
+                env.out().clearPrefix();
             }
-        });
+
+            boolean success = using(backgroundDestination(env, target.destination(retained)), new Function1<Destination, Boolean>() {
+                public Boolean call(Destination destination) throws Exception {
+                    for (Set<String> round = changed; !round.isEmpty(); ) {
+                        Map<String, String> before = graph.fingerprints(round);
+                        Map<String, String> constants = graph.constants(round);
+                        Set<String> removed = graph.remove(round);
+                        retained.removeAll(removed);
+                        for (String name : removed) classes.data().remove(name);
+                        target.remove(removed);
+
+                        final Set<String> compiling = new TreeSet<String>(round);
+                        compiling.retainAll(files.names());
+                        env.out().prefix("  [compile] ").printf("Recompiling %s of %s files%n", compiling.size(), files.names().size());
+                        env.out().clearPrefix();
+                        env.metrics().increment("files_compiled", compiling.size());
+                        for (String name : compiling) env.metrics().increment("bytes_read", files.size(name));
+                        Option<String> api = graph.complete() ? Option.some(graph.api()) : Option.<String>none();
+                        if (!compile(sources(compiling, files), visible, api, graph.recorder(overlay(output(destination), classes), compiling)))
+                            return false;
+                        graph.compiled(modified(compiling, files));
+
+                        Set<String> dependants = graph.dependants(graph.apiChanges(before));
+                        dependants.addAll(mentioning(graph.constantChanges(constants), files));
+                        dependants.removeAll(round);
+                        round = dependants;
+                    }
+                    return true;
+                }
+            });
+            if (!success) return false;
+            graph.save(graphFile);
+            files.save(snapshotFile);
+            return true;
+        }
+    }
+
+    public Option<String> key(File sourceDirectory, File destination) throws Exception {
+        for (CompileProcessor processor : sequence(processors).safeCast(CompileProcessor.class)) {
+            for (File dependency : processor.dependencies()) if (!dependency.exists()) return Option.none();
+        }
+        DependencyGraph graph = dependencyGraph(graphFile(destination));
+        Snapshot previous = Snapshot.load(snapshotFile(destination));
+        Snapshot files = snapshot(sourceDirectory, previous);
+        Set<String> unchanged = new HashSet<String>(files.names());
+        unchanged.removeAll(files.changed(previous));
+        Set<String> changed = graph.changed(files.modified(), classpath(), unchanged);
+        if (changed.isEmpty()) return Option.none();
+        graph.remove(changed);
+        Set<String> compiling = new TreeSet<String>(changed);
+        compiling.retainAll(files.names());
+        return Option.some(key(sources(compiling, files), memoryStore(), Option.some(graph.api())));
+    }
+
+    private static MemoryStore sources(Set<String> compiling, Snapshot files) {
+        return memoryStore(sequence(compiling).map(name -> resource(files.file(name), name, files.modified(name))));
+    }
+
+    private Target outputTarget(File destination) throws IOException {
+        Target target = meteredTarget(target(destination, level(env, destination)), env.metrics());
+        if (!parseBoolean(env.properties().getProperty("jcompilo.output.skip"))) return target;
+        return manifestTarget(env, target, manifestFile(destination));
+    }
+
+    private static Outputs overlay(final Outputs outputs, final MemoryStore classes) {
+        return resource -> {
+            if (resource.name().endsWith(".class")) classes.put(resource);
+            outputs.put(resource);
+        };
+    }
+
+    private static Set<String> mentioning(Set<String> constants, Snapshot files) throws IOException {
+        Set<String> result = new TreeSet<String>();
+        if (constants.isEmpty()) return result;
+        for (String name : files.names()) {
+            if (!name.endsWith(".java")) continue;
+            String source = new String(java.nio.file.Files.readAllBytes(files.file(name).toPath()), StandardCharsets.UTF_8);
+            for (String constant : constants) {
+                if (source.contains(constant)) {
+                    result.add(name);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Long> modified(Set<String> names, Snapshot files) {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (String name : names) result.put(name, files.modified(name));
+        return result;
     }
 
-    private Destination destination(File destination) throws IOException {
-        if (destination.getPath().endsWith(".jar") || destination.getPath().endsWith(".zip")) {
-            env.out().prefix("      [zip] ").printf("Creating: %s%n", destination.getAbsoluteFile());
-            return zipDestination(outputStream(destination));
+    private String classpath() {
+        StringBuilder builder = new StringBuilder();
+        for (CompileProcessor processor : sequence(processors).safeCast(CompileProcessor.class)) {
+            builder.append(processor.options()).append('\n');
+            for (File dependency : processor.dependencies()) builder.append(dependency.getAbsolutePath()).append(':').append(stamp(dependency)).append('\n');
         }
-        return FileDestination.fileDestination(destination);
+        return Digests.sha1(builder.toString());
     }
 
-    private OutputStream outputStream(File destination) throws IOException {
-        FileOutputStream fileOutputStream = new FileOutputStream(destination);
-        return destination.getPath().endsWith(".jar") ? new JarOutputStream(fileOutputStream) : new ZipOutputStream(fileOutputStream);
+    private static String stamp(File dependency) {
+        File graph = graphFile(dependency);
+        if (graph.isFile()) return dependencyGraph(graph).api();
+        return dependency.length() + ":" + dependency.lastModified();
     }
 
     public boolean compile(final Inputs inputs, final Outputs raw) throws Exception {
-        return using(backgroundOutputs(env, decorate(resourceHandlers, raw)), new Function1<Outputs, Boolean>() {
-            @Override
-            public Boolean call(final Outputs outputs) throws Exception {
-                final Map<Processor, MemoryStore> partitions = partition(inputs);
+        return compile(inputs, memoryStore(), raw);
+    }
+
+    public boolean compile(final Inputs inputs, final Inputs classes, final Outputs raw) throws Exception {
+        return compile(inputs, classes, Option.<String>none(), raw);
+    }
 
-                return sequence(processors).mapConcurrently(processor -> {
-                    Inputs matched = partitions.get(processor);
-                    return matched.isEmpty() || processor.process(matched, outputs);
-                }).reduceRight(andPair());
+    private boolean compile(final Inputs inputs, final Inputs classes, final Option<String> api, final Outputs raw) throws Exception {
+        Option<BuildCache> cache = buildCache(env);
+        if (cache.isEmpty()) return compile(partition(inputs), classes, raw);
+
+        String key = key(inputs, classes, api);
+        final Map<Processor, MemoryStore> partitions = partition(inputs);
+        Option<List<Resource>> cached = cache.get().get(key);
+        env.out().prefix("    [cache] ");
+        try {
+            if (!cached.isEmpty()) {
+                Inputs.methods.copy(cached.get(), raw);
+                env.metrics().increment("cache_hits");
+                env.out().printf("Restored %s outputs (%s)%n", cached.get().size(), cache.get().statistics());
+                return true;
+            }
+            env.metrics().increment("cache_misses");
+            try (final MemoryStore produced = memoryStore(env)) {
+                boolean success = compile(partitions, classes, resource -> {
+                    produced.put(resource);
+                    raw.put(resource);
+                });
+                if (success) cache.get().put(key, produced);
+                env.out().printf("Stored %s outputs (%s)%n", produced.size(), cache.get().statistics());
+                return success;
             }
-        });
+        } finally {
+            env.out().clearPrefix();
+        }
+    }
+
+    private boolean compile(final Map<Processor, MemoryStore> partitions, final Inputs classes, final Outputs raw) throws Exception {
+        final Profile profile = profile(env);
+        boolean success;
+        try (BackgroundOutputs written = backgroundOutputs(env, profile.outputs(raw))) {
+            success = using(backgroundOutputs(env, "post_process", postProcessExecutor(env), decorate(env.trace().handlers(profile.handlers(resourceHandlers)), written)), new Function1<Outputs, Boolean>() {
+                @Override
+                public Boolean call(final Outputs outputs) throws Exception {
+                    List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+                    for (final Processor processor : processors) {
+                        final Inputs matched = partitions.get(processor);
+                        results.add(buildExecutor(env).submit(() -> {
+                            if (matched.isEmpty()) return true;
+                            try (Trace.Span ignored = env.trace().span("processor", processor.getClass().getSimpleName())) {
+                                return process(processor, matched, classes, outputs, profile);
+                            }
+                        }));
+                    }
+                    boolean success = true;
+                    for (Future<Boolean> result : results) success &= result.get();
+                    return success;
+                }
+            });
+        }
+        profile.report(env.out().prefix("  [profile] "));
+        env.out().clearPrefix();
+        return success;
+    }
+
+    private String key(Inputs inputs, Inputs classes, Option<String> api) {
+        CacheKey key = cacheKey().add(inputs).add(String.valueOf(env.properties().getProperty("jcompilo.tailrec"))).add("post.process=" + postProcess(env));
+        if (api.isEmpty()) key.add(classes);
+        else key.add("api:" + api.get());
+        for (Processor processor : processors) key.add(processor.getClass().getName());
+        for (ResourceHandler handler : resourceHandlers) {
+            key.add(handler.getClass().getName());
+            if (handler instanceof AsmResourceHandler) {
+                for (Pair<Type, AsmMethodHandler> processor : ((AsmResourceHandler) handler).processors()) key.add(processor.first().getDescriptor() + '=' + processor.second().getClass().getName());
+            }
+        }
+        for (CompileProcessor processor : sequence(processors).safeCast(CompileProcessor.class)) {
+            key.add(processor.options().toString());
+            for (File dependency : processor.dependencies()) key.add(dependency);
+        }
+        return key.value();
+    }
+
+    private static boolean process(Processor processor, Inputs matched, Inputs classes, Outputs outputs, Profile profile) throws Exception {
+        if (processor instanceof CompileProcessor) return ((CompileProcessor) processor).process(matched, classes, outputs, profile);
+        return processor.process(matched, outputs);
     }
 
     private Map<Processor, MemoryStore> partition(Inputs inputs) {
         final Map<Processor, MemoryStore> partitions = Maps.map();
-
         for (Processor processor : processors) {
             partitions.put(processor, memoryStore());
         }
 
+        final Map<String, List<Processor>> dispatch = new HashMap<String, List<Processor>>();
         for (Resource resource : inputs) {
-            for (Processor processor : processors) {
+            String extension = extension(resource.name());
+            List<Processor> candidates = dispatch.get(extension);
+            if (candidates == null) dispatch.put(extension, candidates = candidates(extension));
+            for (Processor processor : candidates) {
                 if (processor.matches(resource.name())) {
                     partitions.get(processor).put(resource);
                 }
@@ -169,6 +381,20 @@ public class Compiler {
         return partitions;
     }
 
+    private List<Processor> candidates(String extension) {
+        List<Processor> result = new ArrayList<Processor>();
+        for (Processor processor : processors) {
+            Set<String> extensions = processor.extensions();
+            if (extensions.isEmpty() || extensions.contains(extension)) result.add(processor);
+        }
+        return result;
+    }
+
+    private static String extension(String name) {
+        int index = name.lastIndexOf('.');
+        return index <= name.lastIndexOf('/') ? "" : name.substring(index);
+    }
+
     public static Sources iterableSource(final Iterable<Source> sequence) {
         return new Sources() {
             @Override
@@ -1,65 +1,62 @@
 package com.googlecode.jcompilo;
 
-import com.googlecode.totallylazy.Characters;
 import com.googlecode.totallylazy.Option;
 import com.googlecode.totallylazy.Sequence;
-import com.googlecode.totallylazy.reflection.Methods;
+import com.googlecode.totallylazy.Sequences;
 
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
-import javax.tools.StandardJavaFileManager;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.lang.reflect.Method;
-import java.util.Date;
 
 import static com.googlecode.jcompilo.Resource.constructors.resource;
-import static com.googlecode.totallylazy.Bytes.bytes;
 import static com.googlecode.totallylazy.Files.name;
-import static com.googlecode.totallylazy.LazyException.lazyException;
 import static com.googlecode.totallylazy.predicates.Predicates.not;
 import static com.googlecode.totallylazy.predicates.Predicates.where;
 import static com.googlecode.totallylazy.Sequences.sequence;
 import static com.googlecode.totallylazy.Strings.endsWith;
-import static com.googlecode.totallylazy.reflection.Methods.invoke;
 import static javax.tools.JavaFileObject.Kind.CLASS;
 import static javax.tools.StandardLocation.CLASS_PATH;
 
 public class CompilerResources implements Resources {
-    private final StandardJavaFileManager fileManager;
+    private final JavaCompiler compiler;
+    private final Sequence<File> dependencies;
+    private final Sequence<String> options;
 
     public CompilerResources(final JavaCompiler compiler, final Iterable<File> dependancies) {
-        fileManager = compiler.getStandardFileManager(null, null, Characters.UTF8);
-        ignoreSymbolFile(fileManager);
-        setDependencies(sequence(dependancies).filter(where(name(), not(endsWith("-sources.jar")))));
+        this(compiler, dependancies, Sequences.<String>empty());
     }
 
-    private void ignoreSymbolFile(StandardJavaFileManager fileManager) {
-        for (Method setSymbolFileEnabled : Methods.method(fileManager.getClass(), "setSymbolFileEnabled", boolean.class)) {
-            invoke(setSymbolFileEnabled, fileManager, false);
-        }
+    public CompilerResources(final JavaCompiler compiler, final Iterable<File> dependancies, final Iterable<String> options) {
+        this.compiler = compiler;
+        this.dependencies = sequence(dependancies).filter(where(name(), not(endsWith("-sources.jar")))).realise();
+        this.options = sequence(options).realise();
     }
 
-    public JavaFileManager output(final Outputs outputs) throws FileNotFoundException {
-        return new OutputsManager(fileManager, outputs);
+    public Sequence<File> dependencies() {
+        return dependencies;
     }
 
-    private void setDependencies(Sequence<File> dependancies) {
-        try {
-            if (dependancies.isEmpty()) return;
-            fileManager.setLocation(CLASS_PATH, dependancies);
-        } catch (IOException e) {
-            throw lazyException(e);
-        }
+    public FileManagers fileManagers() {
+        return FileManagers.fileManagers(compiler, dependencies.toList(), options);
+    }
+
+    public JavaFileManager output(final FileManagers fileManagers, final Outputs outputs) throws FileNotFoundException {
+        return new OutputsManager(fileManagers.shared(), outputs);
+    }
+
+    public JavaFileManager output(final FileManagers fileManagers, final Outputs outputs, final Inputs classes) throws FileNotFoundException {
+        return new OutputsManager(fileManagers.shared(), outputs, classes);
     }
 
     @Override
     public Option<Resource> get(final String name) {
-        try {
-            JavaFileObject fileObject = fileManager.getJavaFileForInput(CLASS_PATH, name, CLASS);
-            return Option.some(resource(fileObject.getName(), new Date(fileObject.getLastModified()), bytes(fileObject.openInputStream())));
+        try (FileManagers fileManagers = fileManagers()) {
+            JavaFileObject fileObject = fileManagers.shared().getJavaFileForInput(CLASS_PATH, name, CLASS);
+            if (fileObject == null) return Option.none();
+            return Option.some(resource(fileObject, fileObject.getName()));
         } catch (IOException e) {
             return Option.none();
         }
@@ -0,0 +1,39 @@
+package com.googlecode.jcompilo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class Digests {
+    public static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new JCompiloException(e);
+        }
+    }
+
+    public static String sha1(byte[] bytes) {
+        return hex(sha1().digest(bytes));
+    }
+
+    public static String sha1(ByteBuffer buffer) {
+        MessageDigest digest = sha1();
+        digest.update(buffer.duplicate());
+        return hex(digest.digest());
+    }
+
+    public static String sha1(String value) {
+        return sha1(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String hex(byte[] bytes) {
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            result[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(result);
+    }
+}
@@ -15,6 +15,14 @@ public interface Environment {
 
     PrefixPrintStream out();
 
+    default Metrics metrics() {
+        return Metrics.metrics();
+    }
+
+    default Trace trace() {
+        return Trace.disabled();
+    }
+
     class constructors {
         public static Environment environment() {
             return environment(Files.workingDirectory());
@@ -25,8 +33,12 @@ public interface Environment {
         }
 
         private static Properties properties() {
+            return properties(System.getProperties());
+        }
+
+        public static Properties properties(Properties defaults) {
             try {
-                Properties properties = new Properties(System.getProperties());
+                Properties properties = new Properties(defaults);
                 properties.load(Environment.class.getResourceAsStream("jcompilo.properties"));
                 return properties;
             } catch (Exception e) {
@@ -45,6 +57,8 @@ public interface Environment {
         public static Environment environment(final File workingDirectory, final Properties properties, final PrintStream out) {
             return new Environment() {
                 private final PrefixPrintStream prefixPrintStream = prefixPrintStream(out);
+                private final Metrics metrics = Metrics.metrics();
+                private final Trace trace = Trace.trace(workingDirectory, properties);
 
                 @Override
                 public File workingDirectory() {
@@ -60,6 +74,16 @@ public interface Environment {
                 public PrefixPrintStream out() {
                     return prefixPrintStream;
                 }
+
+                @Override
+                public Metrics metrics() {
+                    return metrics;
+                }
+
+                @Override
+                public Trace trace() {
+                    return trace;
+                }
             };
         }
     }
@@ -0,0 +1,97 @@
+package com.googlecode.jcompilo;
+
+import com.googlecode.totallylazy.Characters;
+import com.googlecode.totallylazy.reflection.Methods;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.StandardJavaFileManager;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.googlecode.jcompilo.IndexedFileManager.indexedFileManager;
+import static com.googlecode.jcompilo.SynchronizedFileManager.synchronizedFileManager;
+import static com.googlecode.totallylazy.LazyException.lazyException;
+import static com.googlecode.totallylazy.reflection.Methods.invoke;
+import static javax.tools.StandardLocation.CLASS_PATH;
+
+public class FileManagers implements Closeable {
+    public static final int MAXIMUM = 8;
+    private static final Map<String, FileManagers> pool = new LinkedHashMap<String, FileManagers>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileManagers> eldest) {
+            if (size() <= MAXIMUM) return false;
+            eldest.getValue().evict();
+            return true;
+        }
+    };
+    private final StandardJavaFileManager fileManager;
+    private final JavaFileManager shared;
+    private int users;
+    private boolean evicted;
+
+    private FileManagers(StandardJavaFileManager fileManager) {
+        this.fileManager = fileManager;
+        this.shared = indexedFileManager(synchronizedFileManager(fileManager));
+    }
+
+    public static FileManagers fileManagers(JavaCompiler compiler, List<File> dependencies, Iterable<String> options) {
+        String key = key(compiler, dependencies, options);
+        synchronized (pool) {
+            FileManagers result = pool.get(key);
+            if (result == null) pool.put(key, result = new FileManagers(create(compiler, dependencies)));
+            result.users++;
+            return result;
+        }
+    }
+
+    private static StandardJavaFileManager create(JavaCompiler compiler, List<File> dependencies) {
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, Characters.UTF8);
+        for (Method setSymbolFileEnabled : Methods.method(fileManager.getClass(), "setSymbolFileEnabled", boolean.class)) {
+            invoke(setSymbolFileEnabled, fileManager, false);
+        }
+        try {
+            if (!dependencies.isEmpty()) fileManager.setLocation(CLASS_PATH, dependencies);
+        } catch (IOException e) {
+            throw lazyException(e);
+        }
+        return fileManager;
+    }
+
+    private static String key(JavaCompiler compiler, List<File> dependencies, Iterable<String> options) {
+        StringBuilder builder = new StringBuilder(compiler.getClass().getName()).append('@').append(System.identityHashCode(compiler)).append('\n');
+        for (String option : options) builder.append(option).append('\n');
+        for (File dependency : dependencies) {
+            builder.append(dependency.getAbsolutePath()).append(':').append(dependency.length()).append(':').append(dependency.lastModified()).append('\n');
+        }
+        return Digests.sha1(builder.toString());
+    }
+
+    public JavaFileManager shared() {
+        return shared;
+    }
+
+    @Override
+    public void close() {
+        synchronized (pool) {
+            if (--users == 0 && evicted) dispose();
+        }
+    }
+
+    private void evict() {
+        evicted = true;
+        if (users == 0) dispose();
+    }
+
+    private void dispose() {
+        try {
+            fileManager.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
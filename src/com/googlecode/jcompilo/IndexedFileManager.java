@@ -0,0 +1,38 @@
+package com.googlecode.jcompilo;
+
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static javax.tools.StandardLocation.CLASS_PATH;
+import static javax.tools.StandardLocation.PLATFORM_CLASS_PATH;
+
+public class IndexedFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+    private final Map<String, List<JavaFileObject>> index = new ConcurrentHashMap<String, List<JavaFileObject>>();
+
+    private IndexedFileManager(JavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    public static IndexedFileManager indexedFileManager(JavaFileManager fileManager) {
+        return new IndexedFileManager(fileManager);
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+        if (location != CLASS_PATH && location != PLATFORM_CLASS_PATH) return super.list(location, packageName, kinds, recurse);
+        String key = location.getName() + ':' + packageName + ':' + kinds + ':' + recurse;
+        List<JavaFileObject> listed = index.get(key);
+        if (listed != null) return listed;
+        listed = new ArrayList<JavaFileObject>();
+        for (JavaFileObject fileObject : super.list(location, packageName, kinds, recurse)) listed.add(fileObject);
+        index.put(key, listed);
+        return listed;
+    }
+}
@@ -3,13 +3,13 @@ package com.googlecode.jcompilo;
 import com.googlecode.totallylazy.io.Destination;
 import com.googlecode.totallylazy.io.Sources;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MemoryStore implements Inputs, Destination, Outputs {
     private final Map<String, Resource> data;
@@ -19,7 +19,21 @@ public class MemoryStore implements Inputs, Destination, Outputs {
     }
 
     public static MemoryStore memoryStore() {
-        return memoryStore(new HashMap<String, Resource>());
+        return memoryStore(new ConcurrentHashMap<String, Resource>());
+    }
+
+    public static MemoryStore memoryStore(long heapBudget) {
+        return memoryStore(SpillingMap.spillingMap(heapBudget));
+    }
+
+    public static MemoryStore memoryStore(Environment env) {
+        return memoryStore(heapBudget(env));
+    }
+
+    public static long heapBudget(Environment env) {
+        String budget = env.properties().getProperty("jcompilo.memory.budget");
+        if (budget == null) return Runtime.getRuntime().maxMemory() / 4;
+        return Long.parseLong(budget) * 1024 * 1024;
     }
 
     public static MemoryStore memoryStore(Map<String, Resource> data) {
@@ -40,16 +54,17 @@ public class MemoryStore implements Inputs, Destination, Outputs {
 
     @Override
     public OutputStream destination(final String name, final Date modified) throws IOException {
-        return new ByteArrayOutputStream() {
+        return new OutputBuffer() {
             @Override
             public void close() throws IOException {
-                data.put(name, Resource.constructors.resource(name, modified, toByteArray()));
+                data.put(name, resource(name, modified));
             }
         };
     }
 
     @Override
     public void close() throws IOException {
+        if (data instanceof Closeable) ((Closeable) data).close();
     }
 
     public Map<String, Resource> data() {
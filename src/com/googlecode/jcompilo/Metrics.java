@@ -0,0 +1,200 @@
+package com.googlecode.jcompilo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class Metrics {
+    public static final String PREFIX = "jcompilo_";
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<String, LongAdder>();
+    private final Map<String, AtomicLong> gauges = new ConcurrentSkipListMap<String, AtomicLong>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<String, Histogram>();
+    private final AtomicInteger stages = new AtomicInteger();
+    private final AtomicLong opened = new AtomicLong();
+
+    private Metrics() {
+    }
+
+    public static Metrics metrics() {
+        return new Metrics();
+    }
+
+    public void increment(String name) {
+        increment(name, 1);
+    }
+
+    public void increment(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    public void gauge(String name, long value) {
+        gauges.computeIfAbsent(name, key -> new AtomicLong()).set(value);
+    }
+
+    public void max(String name, long value) {
+        gauges.computeIfAbsent(name, key -> new AtomicLong()).accumulateAndGet(value, Math::max);
+    }
+
+    public void record(String name, long value) {
+        histograms.computeIfAbsent(name, key -> new Histogram()).record(value);
+    }
+
+    public long counter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public Stage stage(String name) {
+        return new Stage(name.toLowerCase().replaceAll("[^a-z0-9]+", "_"));
+    }
+
+    public class Stage implements Closeable {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final long gc = gcMillis();
+        private final boolean alone;
+        private final long id;
+
+        private Stage(String name) {
+            this.name = name;
+            this.alone = stages.getAndIncrement() == 0;
+            this.id = opened.incrementAndGet();
+            if (alone) for (MemoryPoolMXBean pool : heapPools()) pool.resetPeakUsage();
+        }
+
+        @Override
+        public void close() {
+            gauge("stage_" + name + "_milliseconds", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            gauge("stage_" + name + "_gc_milliseconds", gcMillis() - gc);
+            if (alone && opened.get() == id) heapPeak();
+            stages.decrementAndGet();
+        }
+
+        // Pool peaks are process wide, so a stage that overlapped another one has no peak of its own to report
+        private void heapPeak() {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : heapPools()) peak += pool.getPeakUsage().getUsed();
+            gauge("stage_" + name + "_heap_peak_bytes", peak);
+        }
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(0, collector.getCollectionTime());
+        return total;
+    }
+
+    private static Iterable<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> result = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) if (pool.getType() == MemoryType.HEAP && pool.isValid()) result.add(pool);
+        return result;
+    }
+
+    public void export(File directory) throws IOException {
+        gauge("gc_milliseconds", gcMillis());
+        directory.mkdirs();
+        Files.write(new File(directory, "metrics.json").toPath(), json().getBytes(UTF_8));
+        Files.write(new File(directory, "metrics.txt").toPath(), openMetrics().getBytes(UTF_8));
+    }
+
+    public String json() {
+        StringBuilder builder = new StringBuilder("{\n  \"counters\": {");
+        String separator = "";
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            builder.append(separator).append("\n    \"").append(counter.getKey()).append("\": ").append(counter.getValue().sum());
+            separator = ",";
+        }
+        builder.append("\n  },\n  \"gauges\": {");
+        separator = "";
+        for (Map.Entry<String, AtomicLong> gauge : gauges.entrySet()) {
+            builder.append(separator).append("\n    \"").append(gauge.getKey()).append("\": ").append(gauge.getValue().get());
+            separator = ",";
+        }
+        builder.append("\n  },\n  \"histograms\": {");
+        separator = "";
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            builder.append(separator).append("\n    \"").append(entry.getKey()).append("\": {\"count\": ").append(histogram.count.sum()).
+                    append(", \"sum\": ").append(histogram.sum.sum()).append(", \"max\": ").append(histogram.max.get()).append(", \"buckets\": {");
+            String bucketSeparator = "";
+            for (int i = 0; i <= histogram.highest(); i++) {
+                builder.append(bucketSeparator).append('"').append(Histogram.bound(i)).append("\": ").append(histogram.buckets[i].sum());
+                bucketSeparator = ", ";
+            }
+            builder.append("}}");
+            separator = ",";
+        }
+        return builder.append("\n  }\n}\n").toString();
+    }
+
+    public String openMetrics() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            String name = PREFIX + counter.getKey();
+            builder.append("# TYPE ").append(name).append(" counter\n").append(name).append("_total ").append(counter.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, AtomicLong> gauge : gauges.entrySet()) {
+            String name = PREFIX + gauge.getKey();
+            builder.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(gauge.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            String name = PREFIX + entry.getKey();
+            Histogram histogram = entry.getValue();
+            builder.append("# TYPE ").append(name).append(" histogram\n");
+            long cumulative = 0;
+            for (int i = 0; i <= histogram.highest(); i++) {
+                cumulative += histogram.buckets[i].sum();
+                builder.append(name).append("_bucket{le=\"").append(Histogram.bound(i)).append("\"} ").append(cumulative).append('\n');
+            }
+            long count = histogram.count.sum();
+            builder.append(name).append("_bucket{le=\"+Inf\"} ").append(Math.max(count, cumulative)).append('\n').
+                    append(name).append("_sum ").append(histogram.sum.sum()).append('\n').
+                    append(name).append("_count ").append(Math.max(count, cumulative)).append('\n');
+        }
+        return builder.append("# EOF\n").toString();
+    }
+
+    private static class Histogram {
+        private static final int BUCKETS = 64;
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram() {
+            for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+        }
+
+        private void record(long value) {
+            long positive = Math.max(0, value);
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(positive))].increment();
+            sum.add(positive);
+            count.increment();
+            if (positive > max.get()) max.accumulateAndGet(positive, Math::max);
+        }
+
+        private int highest() {
+            for (int i = BUCKETS - 1; i >= 0; i--) if (buckets[i].sum() > 0) return i;
+            return -1;
+        }
+
+        private static long bound(int bucket) {
+            return bucket == 0 ? 0 : bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+    }
+}
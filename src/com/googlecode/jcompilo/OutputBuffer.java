@@ -0,0 +1,21 @@
+package com.googlecode.jcompilo;
+
+import com.googlecode.totallylazy.io.Uri;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+public class OutputBuffer extends ByteArrayOutputStream {
+    public ByteBuffer buffer() {
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    public Resource resource(String name, Date modified) {
+        return resource(Uri.uri(name), name, modified);
+    }
+
+    public Resource resource(Uri uri, String name, Date modified) {
+        return new Resource.AResource(uri, name, modified.getTime(), buf, count);
+    }
+}
@@ -5,8 +5,6 @@ import com.googlecode.totallylazy.io.Destination;
 
 import java.io.IOException;
 
-import static com.googlecode.totallylazy.Bytes.write;
-import static com.googlecode.totallylazy.Closeables.using;
 
 public interface Outputs {
     void put(Resource resource);
@@ -15,7 +13,7 @@ public interface Outputs {
         public static Outputs output(final Destination destination) {
             return resource -> {
                 try {
-                    using(destination.destination(resource.name(), resource.modified()), write(resource.bytes()));
+                    ByteBufferDestination.methods.write(destination, resource.name(), resource.modified(), resource.buffer());
                 } catch (IOException e) {
                     throw new UnsupportedOperationException(e);
                 }
@@ -8,18 +8,43 @@ import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import static com.googlecode.jcompilo.ClassFileObject.classFileObject;
 import static com.googlecode.jcompilo.MoveToTL.classNameForSource;
 import static javax.tools.JavaFileObject.Kind.CLASS;
+import static javax.tools.StandardLocation.CLASS_PATH;
 
 public class OutputsManager extends ForwardingJavaFileManager<JavaFileManager> {
     private final Outputs outputs;
+    private final Map<String, List<JavaFileObject>> classes;
+    private final ClassOverlay overlay;
 
     public OutputsManager(final JavaFileManager fileManager, final Outputs outputs) throws FileNotFoundException {
+        this(fileManager, outputs, MemoryStore.memoryStore());
+    }
+
+    public OutputsManager(final JavaFileManager fileManager, final Outputs outputs, final Inputs classes) throws FileNotFoundException {
         super(fileManager);
         this.outputs = outputs;
+        this.overlay = classes instanceof ClassOverlay ? (ClassOverlay) classes : null;
+        this.classes = byPackage(overlay == null ? classes : overlay.classes());
+    }
+
+    private static Map<String, List<JavaFileObject>> byPackage(Inputs classes) {
+        Map<String, List<JavaFileObject>> result = new HashMap<String, List<JavaFileObject>>();
+        for (Resource resource : classes) {
+            ClassFileObject classFile = classFileObject(resource);
+            List<JavaFileObject> files = result.get(classFile.packageName());
+            if (files == null) result.put(classFile.packageName(), files = new ArrayList<JavaFileObject>());
+            files.add(classFile);
+        }
+        return result;
     }
 
     @Override
@@ -34,6 +59,26 @@ public class OutputsManager extends ForwardingJavaFileManager<JavaFileManager> {
 
     @Override
     public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
-        return super.list(location, packageName, Sets.set(CLASS), recurse);
+        Iterable<JavaFileObject> listed = super.list(location, packageName, Sets.set(CLASS), recurse);
+        if (location != CLASS_PATH || (classes.isEmpty() && overlay == null) || !kinds.contains(CLASS)) return listed;
+        List<JavaFileObject> result = new ArrayList<JavaFileObject>();
+        for (Map.Entry<String, List<JavaFileObject>> entry : classes.entrySet()) {
+            if (entry.getKey().equals(packageName) || (recurse && entry.getKey().startsWith(packageName + "."))) result.addAll(entry.getValue());
+        }
+        if (overlay != null) for (Resource resource : overlay.list(packageName, recurse)) result.add(classFileObject(resource));
+        for (JavaFileObject fileObject : listed) result.add(fileObject);
+        return result;
+    }
+
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file) {
+        if (file instanceof ClassFileObject) return ((ClassFileObject) file).binaryName();
+        return super.inferBinaryName(location, file);
+    }
+
+    @Override
+    public boolean isSameFile(FileObject a, FileObject b) {
+        if (a instanceof ClassFileObject || b instanceof ClassFileObject) return a.equals(b);
+        return super.isSameFile(a, b);
     }
 }
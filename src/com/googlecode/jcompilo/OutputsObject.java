@@ -2,7 +2,6 @@ package com.googlecode.jcompilo;
 
 import javax.tools.ForwardingJavaFileObject;
 import javax.tools.JavaFileObject;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Date;
@@ -23,13 +22,11 @@ public class OutputsObject extends ForwardingJavaFileObject<JavaFileObject> {
 
     @Override
     public OutputStream openOutputStream() throws IOException {
-        return new ByteArrayOutputStream(){
+        return new OutputBuffer() {
             @Override
             public void close() throws IOException {
-                outputs.put(Resource.constructors.resource(filename, modified, toByteArray()));
+                outputs.put(resource(filename, modified));
             }
         };
     }
-
-
-}
\ No newline at end of file
+}
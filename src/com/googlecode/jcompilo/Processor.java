@@ -1,7 +1,14 @@
 package com.googlecode.jcompilo;
 
+import java.util.Collections;
+import java.util.Set;
+
 public interface Processor {
     boolean process(Inputs inputs, Outputs outputs) throws Exception;
 
     boolean matches(String filename);
+
+    default Set<String> extensions() {
+        return Collections.emptySet();
+    }
 }
@@ -0,0 +1,189 @@
+package com.googlecode.jcompilo;
+
+import com.googlecode.jcompilo.tool.JCompiler;
+import com.googlecode.totallylazy.Sequence;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.Boolean.parseBoolean;
+
+public class Profile {
+    public static final String POST_PROCESS = "post-process";
+    public static final String WRITE = "write";
+    public static final int TOP = 10;
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean enabled;
+    private final PrintStream out;
+    private final Map<String, Timing> timings = new ConcurrentHashMap<String, Timing>();
+    private final Map<String, long[]> started = new ConcurrentHashMap<String, long[]>();
+
+    private Profile(boolean enabled, PrintStream out) {
+        this.enabled = enabled;
+        this.out = out;
+    }
+
+    public static Profile profile(Environment env) {
+        return new Profile(parseBoolean(env.properties().getProperty("jcompilo.profile")), env.out());
+    }
+
+    public static Profile none() {
+        return new Profile(false, System.err);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public JavaCompiler.CompilationTask listen(JavaCompiler.CompilationTask task) {
+        if (!enabled) return task;
+        JavaCompiler.CompilationTask javac = task instanceof JCompiler.PostProcessingTask ? ((JCompiler.PostProcessingTask) task).task() : task;
+        try {
+            ClassLoader loader = javac.getClass().getClassLoader();
+            Class<?> listener = Class.forName("com.sun.source.util.TaskListener", false, loader);
+            Object proxy = Proxy.newProxyInstance(loader, new Class<?>[]{listener}, (instance, method, arguments) -> {
+                if (method.getDeclaringClass() == Object.class) return method.invoke(this, arguments);
+                event(method.getName(), arguments[0]);
+                return null;
+            });
+            javac.getClass().getMethod("addTaskListener", listener).invoke(javac, proxy);
+        } catch (ReflectiveOperationException e) {
+            out.printf("Unable to profile javac phases of %s: %s%n", javac.getClass().getName(), e);
+        }
+        return task;
+    }
+
+    private void event(String type, Object event) throws ReflectiveOperationException {
+        String phase = String.valueOf(invoke(event, "getKind")).toLowerCase(Locale.ENGLISH);
+        JavaFileObject source = (JavaFileObject) invoke(event, "getSourceFile");
+        String name = source == null ? "(all)" : source.getName();
+        String key = Thread.currentThread().getId() + ":" + phase + ":" + name;
+        if (type.equals("started")) started.put(key, new long[]{System.nanoTime(), allocated()});
+        else {
+            long[] start = started.remove(key);
+            if (start != null) record(phase, name, System.nanoTime() - start[0], allocated() - start[1]);
+        }
+    }
+
+    private static Object invoke(Object instance, String name) throws ReflectiveOperationException {
+        return instance.getClass().getMethod(name).invoke(instance);
+    }
+
+    public Iterable<ResourceHandler> handlers(Iterable<ResourceHandler> handlers) {
+        if (!enabled) return handlers;
+        List<ResourceHandler> result = new ArrayList<ResourceHandler>();
+        for (final ResourceHandler handler : handlers) {
+            result.add(new ResourceHandler() {
+                @Override
+                public boolean matches(String name) {
+                    return handler.matches(name);
+                }
+
+                @Override
+                public Sequence<Resource> handle(Resource resource) {
+                    long start = System.nanoTime(), allocated = allocated();
+                    try {
+                        return handler.handle(resource).realise();
+                    } finally {
+                        record(POST_PROCESS, resource.name(), System.nanoTime() - start, allocated() - allocated);
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    public Outputs outputs(final Outputs outputs) {
+        if (!enabled) return outputs;
+        return resource -> {
+            long start = System.nanoTime(), allocated = allocated();
+            try {
+                outputs.put(resource);
+            } finally {
+                record(WRITE, resource.name(), System.nanoTime() - start, allocated() - allocated);
+            }
+        };
+    }
+
+    public void record(String phase, String name, long nanos, long bytes) {
+        timings.computeIfAbsent(phase + '\t' + name, key -> new Timing(phase, name)).add(nanos, bytes);
+    }
+
+    public void report(PrintStream out) {
+        if (!enabled || timings.isEmpty()) return;
+        Map<String, Timing> phases = new TreeMap<String, Timing>();
+        Map<String, Timing> files = new TreeMap<String, Timing>();
+        List<Timing> outputs = new ArrayList<Timing>();
+        for (Timing timing : timings.values()) {
+            phases.computeIfAbsent(timing.phase, phase -> new Timing(phase, phase)).add(timing);
+            if (timing.phase.equals(POST_PROCESS) || timing.phase.equals(WRITE)) outputs.add(timing);
+            else if (!timing.name.equals("(all)")) files.computeIfAbsent(timing.name, name -> new Timing("javac", name)).add(timing);
+        }
+        out.println("Phases:");
+        for (Timing phase : slowest(phases.values(), phases.size())) out.printf("  %s%n", phase);
+        out.printf("Slowest %s source files:%n", TOP);
+        for (Timing file : slowest(files.values(), TOP)) out.printf("  %s %s%n", file, breakdown(file.name));
+        out.printf("Slowest %s outputs:%n", TOP);
+        for (Timing output : slowest(outputs, TOP)) out.printf("  %s (%s)%n", output, output.phase);
+    }
+
+    private String breakdown(String name) {
+        List<String> result = new ArrayList<String>();
+        for (Timing timing : timings.values()) {
+            if (timing.name.equals(name)) result.add(timing.phase + ' ' + TimeUnit.NANOSECONDS.toMillis(timing.nanos) + "ms");
+        }
+        Collections.sort(result);
+        return result.toString();
+    }
+
+    private static List<Timing> slowest(Iterable<Timing> timings, int limit) {
+        List<Timing> result = new ArrayList<Timing>();
+        for (Timing timing : timings) result.add(timing);
+        Collections.sort(result, (a, b) -> Long.compare(b.nanos, a.nanos));
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    private static long allocated() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return 0;
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+        return bean.isThreadAllocatedMemoryEnabled() ? bean.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    private static class Timing {
+        private final String phase;
+        private final String name;
+        private long nanos;
+        private long bytes;
+
+        private Timing(String phase, String name) {
+            this.phase = phase;
+            this.name = name;
+        }
+
+        private synchronized void add(long nanos, long bytes) {
+            this.nanos += nanos;
+            this.bytes += bytes;
+        }
+
+        private void add(Timing other) {
+            add(other.nanos, other.bytes);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%6sms %8sKB %s", TimeUnit.NANOSECONDS.toMillis(nanos), bytes / 1024, name);
+        }
+    }
+}
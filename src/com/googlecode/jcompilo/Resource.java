@@ -4,7 +4,17 @@ import com.googlecode.totallylazy.Bytes;
 import com.googlecode.totallylazy.functions.Function1;
 import com.googlecode.totallylazy.io.Uri;
 
+import javax.tools.FileObject;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Date;
 
 import static com.googlecode.jcompilo.MoveToTL.classFilename;
@@ -15,19 +25,47 @@ public interface Resource {
 
     String name();
 
-    Date modified();
+    long lastModified();
 
     byte[] bytes();
 
+    default Date modified() {
+        return new Date(lastModified());
+    }
+
+    default InputStream input() throws IOException {
+        return new ByteArrayInputStream(bytes());
+    }
+
+    default ByteBuffer buffer() throws IOException {
+        return ByteBuffer.wrap(bytes());
+    }
+
     class constructors {
         public static Resource resource(final Uri uri, final String name, final Date modified, final byte[] bytes) {
-            return new AResource(uri, name, modified, bytes);
+            return new AResource(uri, name, modified.getTime(), bytes);
         }
 
         public static Resource resource(final String name, final Date modified, final byte[] bytes) {
             return resource(Uri.uri(name), name, modified, bytes);
         }
 
+        public static Resource resource(final String name, final long modified, final byte[] bytes) {
+            return new AResource(Uri.uri(name), name, modified, bytes);
+        }
+
+        public static Resource resource(final File file, final String name) {
+            return resource(file, name, file.lastModified());
+        }
+
+        public static Resource resource(final File file, final String name, final long modified) {
+            return new FileResource(file, name, modified);
+        }
+
+        public static Resource resource(final FileObject fileObject, final String name) {
+            return new FileObjectResource(fileObject, name);
+        }
+
         public static Resource resource(Class<?> aClass) {
             String name = classFilename(aClass.getName());
             String fileName = new File(name).getName();
@@ -35,6 +73,12 @@ public interface Resource {
         }
     }
 
+    class methods {
+        public static long heapSize(Resource resource) {
+            return resource instanceof AResource ? ((AResource) resource).length() : 0;
+        }
+    }
+
     class functions {
         public static Function1<Resource, byte[]> bytes() {
             return resource -> resource.bytes();
@@ -44,14 +88,20 @@ public interface Resource {
     static class AResource implements Resource {
         private final String name;
         private final Uri uri;
-        private final Date modified;
-        private final byte[] bytes;
+        private final long modified;
+        private final int length;
+        private volatile byte[] bytes;
 
-        public AResource(Uri uri, String name, Date modified, byte[] bytes) {
+        public AResource(Uri uri, String name, long modified, byte[] bytes) {
+            this(uri, name, modified, bytes, bytes.length);
+        }
+
+        public AResource(Uri uri, String name, long modified, byte[] bytes, int length) {
             this.name = name;
             this.uri = uri;
             this.modified = modified;
             this.bytes = bytes;
+            this.length = length;
         }
 
         @Override
@@ -65,13 +115,29 @@ public interface Resource {
         }
 
         @Override
-        public Date modified() {
+        public long lastModified() {
             return modified;
         }
 
+        public int length() {
+            return length;
+        }
+
         @Override
         public byte[] bytes() {
-            return bytes;
+            byte[] result = bytes;
+            if (result.length != length) bytes = result = Arrays.copyOf(result, length);
+            return result;
+        }
+
+        @Override
+        public InputStream input() throws IOException {
+            return new ByteArrayInputStream(bytes, 0, length);
+        }
+
+        @Override
+        public ByteBuffer buffer() throws IOException {
+            return ByteBuffer.wrap(bytes, 0, length);
         }
 
         @Override
@@ -80,4 +146,102 @@ public interface Resource {
         }
     }
 
+    static class FileResource implements Resource {
+        private static final long MAP_THRESHOLD = 256 * 1024;
+        private final File file;
+        private final String name;
+        private final long modified;
+
+        public FileResource(File file, String name, long modified) {
+            this.file = file;
+            this.name = name;
+            this.modified = modified;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public Uri uri() {
+            return Uri.uri(name);
+        }
+
+        @Override
+        public long lastModified() {
+            return modified;
+        }
+
+        @Override
+        public byte[] bytes() {
+            try {
+                return Files.readAllBytes(file.toPath());
+            } catch (IOException e) {
+                throw new JCompiloException(e);
+            }
+        }
+
+        @Override
+        public InputStream input() throws IOException {
+            return new FileInputStream(file);
+        }
+
+        @Override
+        public ByteBuffer buffer() throws IOException {
+            if (file.length() < MAP_THRESHOLD) return ByteBuffer.wrap(bytes());
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(%s)", name, file);
+        }
+    }
+
+    static class FileObjectResource implements Resource {
+        private final FileObject fileObject;
+        private final String name;
+
+        public FileObjectResource(FileObject fileObject, String name) {
+            this.fileObject = fileObject;
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public Uri uri() {
+            return Uri.uri(fileObject.toUri().toString());
+        }
+
+        @Override
+        public long lastModified() {
+            return fileObject.getLastModified();
+        }
+
+        @Override
+        public byte[] bytes() {
+            try {
+                return Bytes.bytes(fileObject.openInputStream());
+            } catch (IOException e) {
+                throw new JCompiloException(e);
+            }
+        }
+
+        @Override
+        public InputStream input() throws IOException {
+            return fileObject.openInputStream();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(%s)", name, fileObject.toUri());
+        }
+    }
 }
@@ -5,7 +5,6 @@ import com.googlecode.totallylazy.predicates.Predicate;
 import com.googlecode.totallylazy.Sequence;
 
 import static com.googlecode.totallylazy.Sequences.one;
-import static com.googlecode.totallylazy.Sequences.sequence;
 
 public interface ResourceHandler {
     boolean matches(String name);
@@ -13,9 +12,11 @@ public interface ResourceHandler {
 
     class methods {
         public static Outputs decorate(final Iterable<ResourceHandler> resourceHandlers, final Outputs outputs) {
-            return resource -> sequence(resourceHandlers).
-                    flatMap(functions.matchAndHandle(resource)).
-                    each(Outputs.functions.put(outputs));
+            return resource -> {
+                Sequence<Resource> resources = one(resource);
+                for (ResourceHandler handler : resourceHandlers) resources = resources.flatMap(each -> handler.matches(each.name()) ? handler.handle(each) : one(each)).realise();
+                resources.each(Outputs.functions.put(outputs));
+            };
         }
     }
 
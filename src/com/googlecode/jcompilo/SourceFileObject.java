@@ -2,11 +2,13 @@ package com.googlecode.jcompilo;
 
 import com.googlecode.totallylazy.functions.Function1;
 import com.googlecode.totallylazy.functions.Lazy;
-import com.googlecode.totallylazy.Strings;
 
 import javax.tools.JavaFileObject;
 import javax.tools.SimpleJavaFileObject;
 import java.io.IOException;
+import java.io.InputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class SourceFileObject extends SimpleJavaFileObject {
     private final Resource resource;
@@ -17,7 +19,11 @@ public class SourceFileObject extends SimpleJavaFileObject {
         this.resource = resource;
         charContent = new Lazy<CharSequence>() {
             public CharSequence get() {
-                return Strings.toString(resource.bytes());
+                try {
+                    return UTF_8.decode(resource.buffer());
+                } catch (IOException e) {
+                    throw new JCompiloException(e);
+                }
             }
         };
     }
@@ -35,9 +41,14 @@ public class SourceFileObject extends SimpleJavaFileObject {
         return charContent.value();
     }
 
+    @Override
+    public InputStream openInputStream() throws IOException {
+        return resource.input();
+    }
+
     @Override
     public long getLastModified() {
-        return resource.modified().getTime();
+        return resource.lastModified();
     }
 
     @Override
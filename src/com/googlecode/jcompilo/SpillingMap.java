@@ -0,0 +1,202 @@
+package com.googlecode.jcompilo;
+
+import com.googlecode.totallylazy.io.Uri;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SpillingMap extends AbstractMap<String, Resource> implements Closeable {
+    public static final int SEGMENTS = 8;
+    private final ConcurrentHashMap<String, Resource> data = new ConcurrentHashMap<String, Resource>();
+    private final ConcurrentLinkedQueue<String> heapOrder = new ConcurrentLinkedQueue<String>();
+    private final AtomicLong heap = new AtomicLong();
+    private final long budget;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private SpillingMap(long budget) {
+        this.budget = budget;
+    }
+
+    public static SpillingMap spillingMap(long budget) {
+        return new SpillingMap(budget);
+    }
+
+    public long heap() {
+        return heap.get();
+    }
+
+    @Override
+    public Resource put(String key, Resource value) {
+        Resource old = data.put(key, value);
+        if (old != null) heap.addAndGet(-heapSize(old));
+        long size = heapSize(value);
+        if (size > 0) {
+            heap.addAndGet(size);
+            heapOrder.add(key);
+        }
+        while (heap.get() > budget && spill()) ;
+        return old;
+    }
+
+    private boolean spill() {
+        String key = heapOrder.poll();
+        if (key == null) return false;
+        Resource resource = data.get(key);
+        long size = resource == null ? 0 : heapSize(resource);
+        if (size == 0) return true;
+        Resource spilled = segment(key).write(resource);
+        if (data.replace(key, resource, spilled)) heap.addAndGet(-size);
+        return true;
+    }
+
+    private static long heapSize(Resource resource) {
+        return Resource.methods.heapSize(resource);
+    }
+
+    private Segment segment(String key) {
+        int index = (key.hashCode() & 0x7fffffff) % SEGMENTS;
+        synchronized (segments) {
+            if (segments[index] == null) segments[index] = new Segment();
+            return segments[index];
+        }
+    }
+
+    @Override
+    public Resource get(Object key) {
+        return data.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public Resource remove(Object key) {
+        Resource old = data.remove(key);
+        if (old != null) heap.addAndGet(-heapSize(old));
+        return old;
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public Set<Entry<String, Resource>> entrySet() {
+        return data.entrySet();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (segments) {
+            for (Segment segment : segments) if (segment != null) segment.close();
+        }
+    }
+
+    private static class Segment implements Closeable {
+        private final File file;
+        private final RandomAccessFile randomAccessFile;
+        private final FileChannel channel;
+        private long position;
+
+        private Segment() {
+            try {
+                file = File.createTempFile("jcompilo-spill", ".segment");
+                file.deleteOnExit();
+                randomAccessFile = new RandomAccessFile(file, "rw");
+                channel = randomAccessFile.getChannel();
+            } catch (IOException e) {
+                throw new JCompiloException(e);
+            }
+        }
+
+        private Resource write(Resource resource) {
+            long offset;
+            int length;
+            try {
+                ByteBuffer buffer = resource.buffer();
+                length = buffer.remaining();
+                synchronized (this) {
+                    offset = position;
+                    position += length;
+                }
+                for (int written = 0; buffer.hasRemaining(); ) written += channel.write(buffer, offset + written);
+            } catch (IOException e) {
+                throw new JCompiloException(e);
+            }
+            return new SpilledResource(this, resource.uri(), resource.name(), resource.lastModified(), offset, length);
+        }
+
+        private byte[] read(long offset, int length) {
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) throw new IOException("Spill segment truncated: " + file);
+                }
+                return buffer.array();
+            } catch (IOException e) {
+                throw new JCompiloException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            randomAccessFile.close();
+            file.delete();
+        }
+    }
+
+    private static class SpilledResource implements Resource {
+        private final Segment segment;
+        private final Uri uri;
+        private final String name;
+        private final long modified;
+        private final long offset;
+        private final int length;
+
+        private SpilledResource(Segment segment, Uri uri, String name, long modified, long offset, int length) {
+            this.segment = segment;
+            this.uri = uri;
+            this.name = name;
+            this.modified = modified;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public Uri uri() {
+            return uri;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public long lastModified() {
+            return modified;
+        }
+
+        @Override
+        public byte[] bytes() {
+            return segment.read(offset, length);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(spilled %s bytes)", name, length);
+        }
+    }
+}
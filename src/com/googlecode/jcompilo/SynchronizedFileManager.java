@@ -0,0 +1,74 @@
+package com.googlecode.jcompilo;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+
+public class SynchronizedFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+    private SynchronizedFileManager(JavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    public static SynchronizedFileManager synchronizedFileManager(JavaFileManager fileManager) {
+        return new SynchronizedFileManager(fileManager);
+    }
+
+    @Override
+    public synchronized ClassLoader getClassLoader(Location location) {
+        return super.getClassLoader(location);
+    }
+
+    @Override
+    public synchronized Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+        return super.list(location, packageName, kinds, recurse);
+    }
+
+    @Override
+    public synchronized String inferBinaryName(Location location, JavaFileObject file) {
+        return super.inferBinaryName(location, file);
+    }
+
+    @Override
+    public synchronized boolean isSameFile(FileObject a, FileObject b) {
+        return super.isSameFile(a, b);
+    }
+
+    @Override
+    public synchronized boolean handleOption(String current, Iterator<String> remaining) {
+        return super.handleOption(current, remaining);
+    }
+
+    @Override
+    public synchronized boolean hasLocation(Location location) {
+        return super.hasLocation(location);
+    }
+
+    @Override
+    public synchronized JavaFileObject getJavaFileForInput(Location location, String className, JavaFileObject.Kind kind) throws IOException {
+        return super.getJavaFileForInput(location, className, kind);
+    }
+
+    @Override
+    public synchronized JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+        return super.getJavaFileForOutput(location, className, kind, sibling);
+    }
+
+    @Override
+    public synchronized FileObject getFileForInput(Location location, String packageName, String relativeName) throws IOException {
+        return super.getFileForInput(location, packageName, relativeName);
+    }
+
+    @Override
+    public synchronized FileObject getFileForOutput(Location location, String packageName, String relativeName, FileObject sibling) throws IOException {
+        return super.getFileForOutput(location, packageName, relativeName, sibling);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        super.flush();
+    }
+}
@@ -0,0 +1,115 @@
+package com.googlecode.jcompilo;
+
+import com.googlecode.totallylazy.Sequence;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class Trace {
+    private static final Span NONE = () -> {
+    };
+    private final File file;
+    private final long origin = System.nanoTime();
+    private final Queue<String> events = new ConcurrentLinkedQueue<String>();
+    private final Map<Long, String> threads = new ConcurrentHashMap<Long, String>();
+
+    private Trace(File file) {
+        this.file = file;
+    }
+
+    public static Trace disabled() {
+        return new Trace(null);
+    }
+
+    public static Trace trace(File workingDirectory, Properties properties) {
+        String path = properties.getProperty("jcompilo.trace");
+        if (path == null || path.isEmpty()) return disabled();
+        File file = new File(path);
+        return new Trace(file.isAbsolute() ? file : new File(workingDirectory, path));
+    }
+
+    public boolean enabled() {
+        return file != null;
+    }
+
+    public Span span(final String category, final String name) {
+        if (!enabled()) return NONE;
+        final Thread thread = Thread.currentThread();
+        final long start = System.nanoTime();
+        threads.putIfAbsent(thread.getId(), thread.getName());
+        return () -> events.add(String.format("{\"name\": \"%s\", \"cat\": \"%s\", \"ph\": \"X\", \"ts\": %s, \"dur\": %s, \"pid\": 1, \"tid\": %s}",
+                escape(name), category, micros(start), micros(System.nanoTime()) - micros(start), thread.getId()));
+    }
+
+    public Closeable closing(final String category, final String name, final Closeable closeable) {
+        return () -> {
+            try (Span ignored = span(category, name)) {
+                closeable.close();
+            }
+        };
+    }
+
+    public Iterable<ResourceHandler> handlers(Iterable<ResourceHandler> handlers) {
+        if (!enabled()) return handlers;
+        List<ResourceHandler> result = new ArrayList<ResourceHandler>();
+        for (final ResourceHandler handler : handlers) {
+            result.add(new ResourceHandler() {
+                @Override
+                public boolean matches(String name) {
+                    return handler.matches(name);
+                }
+
+                @Override
+                public Sequence<Resource> handle(Resource resource) {
+                    try (Span ignored = span("post-process", handler.getClass().getSimpleName() + " " + resource.name())) {
+                        return handler.handle(resource).realise();
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    public void write() throws IOException {
+        if (!enabled()) return;
+        List<String> all = new ArrayList<String>();
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            all.add(String.format("{\"name\": \"thread_name\", \"ph\": \"M\", \"pid\": 1, \"tid\": %s, \"args\": {\"name\": \"%s\"}}", thread.getKey(), escape(thread.getValue())));
+        }
+        all.addAll(events);
+        String json = "{\"traceEvents\": [\n" + String.join(",\n", all) + "\n], \"displayTimeUnit\": \"ms\"}\n";
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        Files.write(file.toPath(), json.getBytes(UTF_8));
+    }
+
+    private long micros(long nanos) {
+        return (nanos - origin) / 1000;
+    }
+
+    private static String escape(String value) {
+        StringBuilder builder = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') builder.append('\\').append(c);
+            else if (c < 0x20) builder.append(String.format("\\u%04x", (int) c));
+            else builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    public interface Span extends Closeable {
+        @Override
+        void close();
+    }
+}
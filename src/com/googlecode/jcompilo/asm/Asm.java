@@ -198,9 +198,13 @@ public final class Asm {
     }
 
     public static ClassNode classNode(final byte[] bytes) {
+        return classNode(bytes, 0);
+    }
+
+    public static ClassNode classNode(final byte[] bytes, final int flags) {
         ClassReader reader = new ClassReader(bytes);
         ClassNode classNode = new ClassNode();
-        reader.accept(classNode, 0);
+        reader.accept(classNode, flags);
         return classNode;
     }
 
@@ -276,6 +280,7 @@ public final class Asm {
         public static final Function1<AbstractInsnNode, AbstractInsnNode> nextInstruction = AbstractInsnNode::getNext;
         public static final Function1<MethodInsnNode, String> owner = methodInsnNode -> methodInsnNode.owner;
         public static final Function1<MethodInsnNode, String> name = methodInsnNode -> methodInsnNode.name;
+        public static final Function1<MethodInsnNode, String> descriptor = methodInsnNode -> methodInsnNode.desc;
         public static final Function1<LocalVariableNode, Type> localVariableType = localVariableNode -> Type.getType(localVariableNode.desc);
         public static final Function1<MethodNode, Integer> access = node -> node.access;
     }
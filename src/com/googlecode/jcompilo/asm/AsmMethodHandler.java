@@ -4,6 +4,7 @@ import com.googlecode.totallylazy.Sequence;
 import jdk.internal.org.objectweb.asm.tree.ClassNode;
 import jdk.internal.org.objectweb.asm.tree.MethodNode;
 
+// Handlers may only rewrite the annotated method and add fields, methods or classes; other members arrive without code
 public interface AsmMethodHandler {
     Sequence<ClassNode> process(ClassNode classNode, MethodNode method);
 }
@@ -7,29 +7,50 @@ import com.googlecode.totallylazy.Pair;
 import com.googlecode.totallylazy.Sequence;
 import com.googlecode.totallylazy.collections.PersistentList;
 import com.googlecode.totallylazy.predicates.Predicate;
+import jdk.internal.org.objectweb.asm.ClassReader;
+import jdk.internal.org.objectweb.asm.ClassVisitor;
 import jdk.internal.org.objectweb.asm.ClassWriter;
+import jdk.internal.org.objectweb.asm.MethodVisitor;
+import jdk.internal.org.objectweb.asm.Opcodes;
 import jdk.internal.org.objectweb.asm.Type;
 import jdk.internal.org.objectweb.asm.tree.ClassNode;
+import jdk.internal.org.objectweb.asm.tree.FieldNode;
 import jdk.internal.org.objectweb.asm.tree.MethodNode;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static com.googlecode.jcompilo.Resource.constructors.resource;
 import static com.googlecode.jcompilo.asm.Asm.annotations;
 import static com.googlecode.jcompilo.asm.Asm.predicates.annotation;
+import static com.googlecode.jcompilo.bytecode.ConstantPool.containsUtf8;
+import static com.googlecode.jcompilo.bytecode.ConstantPool.utf8;
 import static com.googlecode.totallylazy.functions.Callables.first;
 import static com.googlecode.totallylazy.predicates.Predicates.where;
 import static com.googlecode.totallylazy.Sequences.one;
 import static com.googlecode.totallylazy.Sequences.sequence;
 import static com.googlecode.totallylazy.collections.PersistentList.constructors;
 import static com.googlecode.totallylazy.collections.PersistentList.constructors.list;
+import static jdk.internal.org.objectweb.asm.ClassReader.SKIP_CODE;
+import static jdk.internal.org.objectweb.asm.ClassReader.SKIP_DEBUG;
+import static jdk.internal.org.objectweb.asm.ClassReader.SKIP_FRAMES;
 
 public class AsmResourceHandler implements ResourceHandler {
     private final PersistentList<Pair<Type, AsmMethodHandler>> processors;
+    private final List<byte[]> descriptors = new ArrayList<byte[]>();
 
     private AsmResourceHandler(Iterable<? extends Pair<Type, AsmMethodHandler>> processors) {
         this.processors = list(processors);
+        for (Pair<Type, AsmMethodHandler> processor : this.processors) descriptors.add(utf8(processor.first().getDescriptor()));
     }
 
     public static AsmResourceHandler asmResourceHandler(Iterable<? extends Pair<Type, AsmMethodHandler>> processors) {
@@ -48,6 +69,10 @@ public class AsmResourceHandler implements ResourceHandler {
         return asmResourceHandler(processors.cons(Pair.<Type, AsmMethodHandler>pair(annotation, asmProcessor)));
     }
 
+    public PersistentList<Pair<Type, AsmMethodHandler>> processors() {
+        return processors;
+    }
+
     @Override
     public boolean matches(String name) {
         return name.endsWith(".class");
@@ -55,17 +80,24 @@ public class AsmResourceHandler implements ResourceHandler {
 
     @Override
     public Sequence<Resource> handle(final Resource resource) {
-        if (processors.isEmpty()) return one(resource);
-
-        final ClassNode classNode = Asm.classNode(resource.bytes());
-
-        Sequence<ClassNode> classNodes = Asm.methods(classNode).flatMap(method -> sequence(processors).
-                filter(where(first(Type.class), hasAnnotation(method))).
-                flatMap(processPair(method, classNode))).realise();
-
-        if (classNodes.isEmpty()) return one(resource);
-
-        return classNodes.map(asResource(resource.modified()));
+        if (processors.isEmpty() || !containsUtf8(resource.bytes(), descriptors)) return one(resource);
+
+        ClassReader reader = new ClassReader(resource.bytes());
+        ClassNode classNode = new ClassNode();
+        reader.accept(classNode, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
+
+        Map<String, List<Pair<Type, AsmMethodHandler>>> annotated = new HashMap<String, List<Pair<Type, AsmMethodHandler>>>();
+        for (MethodNode method : Asm.methods(classNode)) {
+            List<Pair<Type, AsmMethodHandler>> matched = sequence(processors).filter(where(first(Type.class), hasAnnotation(method))).toList();
+            if (!matched.isEmpty()) annotated.put(method.name + method.desc, matched);
+        }
+        if (annotated.isEmpty()) return one(resource);
+
+        ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+        Fused fused = new Fused(writer, classNode, annotated);
+        reader.accept(fused, 0);
+        return one(resource(classNode.name + ".class", resource.modified(), writer.toByteArray())).
+                join(sequence(fused.generated).map(asResource(resource.modified())));
     }
 
     private Function1<ClassNode, Resource> asResource(final Date modified) {
@@ -76,11 +108,77 @@ public class AsmResourceHandler implements ResourceHandler {
         };
     }
 
-    private static Function1<Pair<Type, AsmMethodHandler>, Sequence<ClassNode>> processPair(final MethodNode method, final ClassNode classNode) {
-        return pair -> {
-            method.invisibleAnnotations.remove(annotations(method).find(annotation(pair.first())).get());
-            return pair.second().process(classNode, method);
-        };
+    private static class Fused extends ClassVisitor {
+        private final ClassNode classNode;
+        private final Map<String, List<Pair<Type, AsmMethodHandler>>> annotated;
+        private final Map<MethodNode, List<Pair<Type, AsmMethodHandler>>> captured = new LinkedHashMap<MethodNode, List<Pair<Type, AsmMethodHandler>>>();
+        private final Set<ClassNode> generated = new LinkedHashSet<ClassNode>();
+
+        private Fused(ClassWriter writer, ClassNode classNode, Map<String, List<Pair<Type, AsmMethodHandler>>> annotated) {
+            super(Opcodes.ASM5, writer);
+            this.classNode = classNode;
+            this.annotated = annotated;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            List<Pair<Type, AsmMethodHandler>> matched = annotated.get(name + desc);
+            if (matched == null) return super.visitMethod(access, name, desc, signature, exceptions);
+            MethodNode method = new MethodNode(access, name, desc, signature, exceptions);
+            List<MethodNode> methods = classNode.methods;
+            for (int i = 0; i < methods.size(); i++) {
+                if (methods.get(i).name.equals(name) && methods.get(i).desc.equals(desc)) methods.set(i, method);
+            }
+            captured.put(method, matched);
+            return method;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void visitEnd() {
+            Set<Object> original = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+            original.addAll(classNode.methods);
+            original.addAll(classNode.fields);
+            original.removeAll(captured.keySet());
+            String shape = shape(classNode, original);
+            for (Map.Entry<MethodNode, List<Pair<Type, AsmMethodHandler>>> entry : captured.entrySet()) {
+                MethodNode method = entry.getKey();
+                for (Pair<Type, AsmMethodHandler> pair : entry.getValue()) {
+                    method.invisibleAnnotations.remove(annotations(method).find(annotation(pair.first())).get());
+                    for (ClassNode node : pair.second().process(classNode, method)) if (node != classNode) generated.add(node);
+                }
+            }
+            if (!shape.equals(shape(classNode, original)))
+                throw new IllegalStateException(String.format("%s was changed outside its annotated methods; handlers may only rewrite those and add members", classNode.name));
+            for (FieldNode field : (List<FieldNode>) classNode.fields) if (!original.contains(field)) field.accept(cv);
+            for (MethodNode method : (List<MethodNode>) classNode.methods) if (!original.contains(method)) method.accept(cv);
+            super.visitEnd();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String shape(ClassNode classNode, Set<Object> original) {
+        StringBuilder builder = new StringBuilder().append(classNode.access).append(' ').append(classNode.name).append(' ').append(classNode.signature).
+                append(' ').append(classNode.superName).append(' ').append(classNode.interfaces).append(' ').append(classNode.sourceFile).
+                append(' ').append(classNode.outerClass).append(' ').append(classNode.outerMethod).append(' ').append(classNode.outerMethodDesc).
+                append(' ').append(size(classNode.visibleAnnotations)).append(' ').append(size(classNode.invisibleAnnotations)).
+                append(' ').append(size(classNode.innerClasses)).append(' ').append(size(classNode.attrs)).append('\n');
+        for (FieldNode field : (List<FieldNode>) classNode.fields) {
+            if (!original.contains(field)) continue;
+            builder.append(field.access).append(' ').append(field.name).append(field.desc).append(' ').append(field.signature).append(' ').append(field.value).
+                    append(' ').append(size(field.visibleAnnotations)).append(' ').append(size(field.invisibleAnnotations)).append('\n');
+        }
+        for (MethodNode method : (List<MethodNode>) classNode.methods) {
+            if (!original.contains(method)) continue;
+            builder.append(method.access).append(' ').append(method.name).append(method.desc).append(' ').append(method.signature).append(' ').append(method.exceptions).
+                    append(' ').append(size(method.visibleAnnotations)).append(' ').append(size(method.invisibleAnnotations)).append(' ').append(method.instructions.size()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static int size(List<?> list) {
+        return list == null ? 0 : list.size();
     }
 
     private static Predicate<Type> hasAnnotation(final MethodNode methodNode) {
@@ -0,0 +1,99 @@
+package com.googlecode.jcompilo.bytecode;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ClassInfo {
+    private static final Pattern DESCRIPTOR = Pattern.compile("L([\\w/$]+)[;<]");
+    public final String name;
+    public final String sourceFile;
+    public final Set<String> references;
+
+    private ClassInfo(String name, String sourceFile, Set<String> references) {
+        this.name = name;
+        this.sourceFile = sourceFile;
+        this.references = references;
+    }
+
+    public static ClassInfo classInfo(byte[] bytes) {
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new ClassFormatError(e.getMessage());
+        }
+    }
+
+    private static ClassInfo read(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        if (magic != 0xcafebabe) throw new ClassFormatError("wrong magic: " + magic);
+        in.skipBytes(4);
+
+        int size = in.readUnsignedShort();
+        String[] utf8 = new String[size];
+        int[] classes = new int[size];
+        for (int i = 1; i < size; i++) {
+            Constant constant = Constant.constant(in.readUnsignedByte());
+            switch (constant) {
+                case Utf8:
+                    utf8[i] = in.readUTF();
+                    break;
+                case Class:
+                    classes[i] = in.readUnsignedShort();
+                    break;
+                case Double:
+                case Long:
+                    i++;
+                default:
+                    in.skipBytes(constant.size);
+                    break;
+            }
+        }
+
+        in.skipBytes(2);
+        String name = utf8[classes[in.readUnsignedShort()]];
+        in.skipBytes(2);
+        in.skipBytes(2 * in.readUnsignedShort());
+        skipMembers(in);
+        skipMembers(in);
+        String sourceFile = null;
+        for (int attributes = in.readUnsignedShort(); attributes > 0; attributes--) {
+            String attribute = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+            if ("SourceFile".equals(attribute)) sourceFile = utf8[in.readUnsignedShort()];
+            else in.skipBytes(length);
+        }
+
+        Set<String> references = new TreeSet<String>();
+        for (int index : classes) if (index != 0) reference(references, utf8[index]);
+        for (String value : utf8) if (value != null) descriptors(references, value);
+        references.remove(name);
+        return new ClassInfo(name, sourceFile, Collections.unmodifiableSet(references));
+    }
+
+    private static void skipMembers(DataInputStream in) throws IOException {
+        for (int members = in.readUnsignedShort(); members > 0; members--) {
+            in.skipBytes(6);
+            for (int attributes = in.readUnsignedShort(); attributes > 0; attributes--) {
+                in.skipBytes(2);
+                in.skipBytes(in.readInt());
+            }
+        }
+    }
+
+    private static void reference(Set<String> references, String name) {
+        if (name.startsWith("[")) descriptors(references, name);
+        else references.add(name);
+    }
+
+    private static void descriptors(Set<String> references, String value) {
+        if (value.indexOf(';') < 0 && value.indexOf('<') < 0) return;
+        Matcher matcher = DESCRIPTOR.matcher(value);
+        while (matcher.find()) references.add(matcher.group(1));
+    }
+}
@@ -0,0 +1,61 @@
+package com.googlecode.jcompilo.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class ConstantPool {
+    private ConstantPool() {
+    }
+
+    public static boolean containsUtf8(byte[] bytes, Iterable<byte[]> values) {
+        if (bytes.length < 10 || readInt(bytes, 0) != 0xcafebabe) throw new ClassFormatError("wrong magic");
+        int size = readUnsignedShort(bytes, 8);
+        int offset = 10;
+        for (int i = 1; i < size; i++) {
+            Constant constant = Constant.constant(bytes[offset++] & 0xff);
+            switch (constant) {
+                case Utf8:
+                    int length = readUnsignedShort(bytes, offset);
+                    offset += 2;
+                    for (byte[] value : values) if (matches(bytes, offset, length, value)) return true;
+                    offset += length;
+                    break;
+                case Double:
+                case Long:
+                    i++;
+                default:
+                    offset += constant.size;
+                    break;
+            }
+        }
+        return false;
+    }
+
+    public static byte[] utf8(String value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new DataOutputStream(bytes).writeUTF(value);
+            byte[] result = bytes.toByteArray();
+            byte[] withoutLength = new byte[result.length - 2];
+            System.arraycopy(result, 2, withoutLength, 0, withoutLength.length);
+            return withoutLength;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static boolean matches(byte[] bytes, int offset, int length, byte[] value) {
+        if (length != value.length) return false;
+        for (int i = 0; i < length; i++) if (bytes[offset + i] != value[i]) return false;
+        return true;
+    }
+
+    private static int readUnsignedShort(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (readUnsignedShort(bytes, offset) << 16) | readUnsignedShort(bytes, offset + 2);
+    }
+}
@@ -0,0 +1,257 @@
+package com.googlecode.jcompilo.cache;
+
+import com.googlecode.jcompilo.Environment;
+import com.googlecode.jcompilo.JCompiloException;
+import com.googlecode.jcompilo.Resource;
+import com.googlecode.totallylazy.Option;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.googlecode.jcompilo.Resource.constructors.resource;
+import static com.googlecode.jcompilo.cache.RemoteCache.constructors.remoteCache;
+import static com.googlecode.jcompilo.cache.RemoteCache.constructors.timeout;
+import static com.googlecode.totallylazy.Option.none;
+import static com.googlecode.totallylazy.Option.some;
+
+public class BuildCache {
+    public static final long DEFAULT_SIZE = 1024;
+    public static final int DEFAULT_UPLOADS = 2;
+    private static final Map<File, BuildCache> caches = new ConcurrentHashMap<File, BuildCache>();
+    private final File directory;
+    private final long maximumBytes;
+    private final Option<RemoteCache> remote;
+    private final int timeout;
+    private final ExecutorService downloads;
+    private final ThreadPoolExecutor uploads;
+    private final Map<String, Future<Option<byte[]>>> prefetched = new ConcurrentHashMap<String, Future<Option<byte[]>>>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong remoteHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private BuildCache(File directory, long maximumBytes, Option<RemoteCache> remote, int timeout, int uploads) {
+        this.directory = directory;
+        this.maximumBytes = maximumBytes;
+        this.remote = remote;
+        this.timeout = timeout;
+        this.downloads = Executors.newCachedThreadPool(daemon("jcompilo-cache-download"));
+        this.uploads = new ThreadPoolExecutor(uploads, uploads, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<Runnable>(64), daemon("jcompilo-cache-upload"), new ThreadPoolExecutor.DiscardPolicy());
+        if (!remote.isEmpty()) Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+    }
+
+    public static BuildCache buildCache(File directory, long maximumBytes) {
+        return buildCache(directory, maximumBytes, Option.<RemoteCache>none(), RemoteCache.constructors.DEFAULT_TIMEOUT, DEFAULT_UPLOADS);
+    }
+
+    public static BuildCache buildCache(File directory, long maximumBytes, Option<RemoteCache> remote, int timeout, int uploads) {
+        return new BuildCache(directory, maximumBytes, remote, timeout, uploads);
+    }
+
+    public static Option<BuildCache> buildCache(final Environment env) throws IOException {
+        String directory = env.properties().getProperty("jcompilo.cache.dir");
+        final Option<RemoteCache> remote = remoteCache(env);
+        if ((directory == null || directory.isEmpty()) && remote.isEmpty()) return none();
+        if (directory == null || directory.isEmpty()) directory = new File(env.properties().getProperty("user.home"), ".jcompilo/cache").getPath();
+        final long maximumBytes = Long.parseLong(env.properties().getProperty("jcompilo.cache.size", String.valueOf(DEFAULT_SIZE))) * 1024 * 1024;
+        final int uploads = Integer.parseInt(env.properties().getProperty("jcompilo.cache.remote.uploads", String.valueOf(DEFAULT_UPLOADS)));
+        return some(caches.computeIfAbsent(new File(directory).getAbsoluteFile(), file -> buildCache(file, maximumBytes, remote, timeout(env), uploads)));
+    }
+
+    public boolean remote() {
+        return !remote.isEmpty();
+    }
+
+    public void prefetch(Iterable<String> keys) {
+        if (remote.isEmpty()) return;
+        for (final String key : keys) {
+            if (file(key).isFile() || prefetched.containsKey(key)) continue;
+            prefetched.put(key, downloads.submit(() -> remote.get().get(key)));
+        }
+    }
+
+    public Option<List<Resource>> get(String key) {
+        File file = file(key);
+        if (file.isFile()) {
+            try {
+                List<Resource> resources = read(Files.readAllBytes(file.toPath()));
+                file.setLastModified(System.currentTimeMillis());
+                hits.incrementAndGet();
+                return some(resources);
+            } catch (IOException e) {
+                file.delete();
+            }
+        }
+        Option<byte[]> downloaded = download(key);
+        if (!downloaded.isEmpty()) {
+            try {
+                List<Resource> resources = read(downloaded.get());
+                store(key, downloaded.get());
+                hits.incrementAndGet();
+                remoteHits.incrementAndGet();
+                return some(resources);
+            } catch (IOException ignored) {
+            }
+        }
+        misses.incrementAndGet();
+        return none();
+    }
+
+    private Option<byte[]> download(String key) {
+        if (remote.isEmpty()) return none();
+        Future<Option<byte[]>> future = prefetched.remove(key);
+        if (future == null) future = downloads.submit(() -> remote.get().get(key));
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return none();
+        } catch (Exception e) {
+            return none();
+        }
+    }
+
+    public void put(final String key, Iterable<Resource> resources) {
+        try {
+            final byte[] bytes = write(resources);
+            store(key, bytes);
+            if (!remote.isEmpty()) uploads.execute(() -> upload(key, bytes));
+        } catch (IOException e) {
+            throw new JCompiloException(e);
+        }
+        evict();
+    }
+
+    private void upload(String key, byte[] bytes) {
+        try {
+            remote.get().put(key, bytes);
+        } catch (IOException ignored) {
+        }
+    }
+
+    public void flush() {
+        uploads.shutdown();
+        try {
+            uploads.awaitTermination(timeout * 4L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long remoteHits() {
+        return remoteHits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public String statistics() {
+        if (remote.isEmpty()) return String.format("%s hits, %s misses", hits(), misses());
+        return String.format("%s hits (%s remote), %s misses", hits(), remoteHits(), misses());
+    }
+
+    private File file(String key) {
+        return new File(new File(directory, key.substring(0, 2)), key);
+    }
+
+    private void store(String key, byte[] bytes) throws IOException {
+        File file = file(key);
+        file.getParentFile().mkdirs();
+        File temporary = new File(file.getPath() + ".tmp" + Thread.currentThread().getId());
+        try {
+            Files.write(temporary.toPath(), bytes);
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temporary.delete();
+        }
+    }
+
+    private void evict() {
+        List<File> entries = new ArrayList<File>();
+        long total = 0;
+        File[] buckets = directory.listFiles();
+        if (buckets == null) return;
+        for (File bucket : buckets) {
+            File[] files = bucket.listFiles();
+            if (files == null) continue;
+            for (File file : files) {
+                if (file.getName().contains(".tmp")) continue;
+                entries.add(file);
+                total += file.length();
+            }
+        }
+        if (total <= maximumBytes) return;
+        final Map<File, Long> modified = new HashMap<File, Long>();
+        for (File entry : entries) modified.put(entry, entry.lastModified());
+        Collections.sort(entries, (a, b) -> Long.compare(modified.get(a), modified.get(b)));
+        for (File entry : entries) {
+            if (total <= maximumBytes) return;
+            long length = entry.length();
+            if (entry.delete()) total -= length;
+        }
+    }
+
+    private static List<Resource> read(byte[] bytes) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int count = input.readInt();
+            List<Resource> resources = new ArrayList<Resource>(count);
+            for (int i = 0; i < count; i++) {
+                String name = input.readUTF();
+                long modified = input.readLong();
+                byte[] data = new byte[input.readInt()];
+                input.readFully(data);
+                resources.add(resource(name, modified, data));
+            }
+            return resources;
+        }
+    }
+
+    private static byte[] write(Iterable<Resource> resources) throws IOException {
+        List<Resource> list = new ArrayList<Resource>();
+        for (Resource resource : resources) list.add(resource);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(list.size());
+            for (Resource resource : list) {
+                output.writeUTF(resource.name());
+                output.writeLong(resource.lastModified());
+                output.writeInt(resource.bytes().length);
+                output.write(resource.bytes());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
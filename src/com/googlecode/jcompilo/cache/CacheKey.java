@@ -0,0 +1,83 @@
+package com.googlecode.jcompilo.cache;
+
+import com.googlecode.jcompilo.Compiler;
+import com.googlecode.jcompilo.Digests;
+import com.googlecode.jcompilo.JCompiloException;
+import com.googlecode.jcompilo.Resource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.googlecode.jcompilo.incremental.DependencyGraph.dependencyGraph;
+import static com.googlecode.jcompilo.incremental.DependencyGraph.graphFile;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class CacheKey {
+    private static final Map<String, String> fileHashes = new ConcurrentHashMap<String, String>();
+    private final MessageDigest digest = Digests.sha1();
+
+    private CacheKey() {
+        add(version());
+    }
+
+    public static CacheKey cacheKey() {
+        return new CacheKey();
+    }
+
+    public CacheKey add(String value) {
+        digest.update(value.getBytes(UTF_8));
+        digest.update((byte) 0);
+        return this;
+    }
+
+    public CacheKey add(Iterable<? extends Resource> resources) {
+        List<String> entries = new ArrayList<String>();
+        for (Resource resource : resources) entries.add(resource.name() + '=' + Digests.sha1(resource.bytes()));
+        Collections.sort(entries);
+        for (String entry : entries) add(entry);
+        return this;
+    }
+
+    public CacheKey add(File file) {
+        File graph = graphFile(file);
+        if (graph.isFile()) return add(file.getName() + "=api:" + dependencyGraph(graph).api());
+        return add(file.getName() + '=' + hash(file));
+    }
+
+    public String value() {
+        return Digests.hex(digest.digest());
+    }
+
+    public static String hash(File file) {
+        String stamp = file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified();
+        String hash = fileHashes.get(stamp);
+        if (hash != null) return hash;
+        MessageDigest digest = Digests.sha1();
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int read; (read = input.read(buffer)) > 0; ) digest.update(buffer, 0, read);
+        } catch (IOException e) {
+            throw new JCompiloException(e);
+        }
+        hash = Digests.hex(digest.digest());
+        fileHashes.put(stamp, hash);
+        return hash;
+    }
+
+    private static String version() {
+        String version = Compiler.class.getPackage() == null ? null : Compiler.class.getPackage().getImplementationVersion();
+        if (version != null) return version;
+        URL location = Compiler.class.getProtectionDomain().getCodeSource().getLocation();
+        File file = new File(location.getPath());
+        return file.isFile() ? hash(file) : location.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.googlecode.jcompilo.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class CacheServer implements Closeable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final File directory;
+
+    private CacheServer(File directory, int port) throws IOException {
+        this.directory = directory;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newCachedThreadPool();
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public static CacheServer cacheServer(File directory, int port) throws IOException {
+        return new CacheServer(directory, port);
+    }
+
+    public static void main(String[] args) throws Exception {
+        cacheServer(new File(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 7010);
+    }
+
+    public URL url() throws IOException {
+        return new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), "/");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String key = exchange.getRequestURI().getPath().replaceFirst("^/", "");
+            if (!key.matches("[0-9a-f]{40}")) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            File file = new File(new File(directory, key.substring(0, 2)), key);
+            switch (exchange.getRequestMethod()) {
+                case "GET":
+                    if (!file.isFile()) {
+                        exchange.sendResponseHeaders(404, -1);
+                        return;
+                    }
+                    exchange.sendResponseHeaders(200, file.length());
+                    try (OutputStream output = exchange.getResponseBody()) {
+                        Files.copy(file.toPath(), output);
+                    }
+                    return;
+                case "PUT":
+                    file.getParentFile().mkdirs();
+                    File temporary = File.createTempFile(key, ".tmp", file.getParentFile());
+                    try (InputStream input = exchange.getRequestBody()) {
+                        Files.copy(input, temporary.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    exchange.sendResponseHeaders(201, -1);
+                    return;
+                default:
+                    exchange.sendResponseHeaders(405, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
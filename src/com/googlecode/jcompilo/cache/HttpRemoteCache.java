@@ -0,0 +1,75 @@
+package com.googlecode.jcompilo.cache;
+
+import com.googlecode.totallylazy.Option;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static com.googlecode.totallylazy.Option.none;
+import static com.googlecode.totallylazy.Option.some;
+
+public class HttpRemoteCache implements RemoteCache {
+    private final URL base;
+    private final int timeout;
+
+    private HttpRemoteCache(URL base, int timeout) {
+        this.base = base;
+        this.timeout = timeout;
+    }
+
+    public static HttpRemoteCache httpRemoteCache(URL base, int timeout) {
+        return new HttpRemoteCache(base, timeout);
+    }
+
+    @Override
+    public Option<byte[]> get(String key) throws IOException {
+        HttpURLConnection connection = connection(key, "GET");
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) return none();
+            try (InputStream input = connection.getInputStream()) {
+                ByteArrayOutputStream result = new ByteArrayOutputStream(Math.max(connection.getContentLength(), 32));
+                byte[] buffer = new byte[64 * 1024];
+                for (int read; (read = input.read(buffer)) > 0; ) result.write(buffer, 0, read);
+                return some(result.toByteArray());
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] value) throws IOException {
+        HttpURLConnection connection = connection(key, "PUT");
+        try {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(value.length);
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(value);
+            }
+            int code = connection.getResponseCode();
+            if (code / 100 != 2) throw new IOException("PUT " + key + " returned " + code);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection connection(String key, String method) throws IOException {
+        String base = this.base.toString();
+        HttpURLConnection connection = (HttpURLConnection) new URL(base.endsWith("/") ? base + key : base + "/" + key).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setUseCaches(false);
+        return connection;
+    }
+
+    @Override
+    public String toString() {
+        return base.toString();
+    }
+}
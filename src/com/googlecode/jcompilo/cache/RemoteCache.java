@@ -0,0 +1,31 @@
+package com.googlecode.jcompilo.cache;
+
+import com.googlecode.jcompilo.Environment;
+import com.googlecode.totallylazy.Option;
+
+import java.io.IOException;
+import java.net.URL;
+
+import static com.googlecode.jcompilo.cache.HttpRemoteCache.httpRemoteCache;
+import static com.googlecode.totallylazy.Option.none;
+import static com.googlecode.totallylazy.Option.some;
+
+public interface RemoteCache {
+    Option<byte[]> get(String key) throws IOException;
+
+    void put(String key, byte[] value) throws IOException;
+
+    class constructors {
+        public static final int DEFAULT_TIMEOUT = 2000;
+
+        public static Option<RemoteCache> remoteCache(Environment env) throws IOException {
+            String url = env.properties().getProperty("jcompilo.cache.remote");
+            if (url == null || url.isEmpty()) return none();
+            return some(httpRemoteCache(new URL(url), timeout(env)));
+        }
+
+        public static int timeout(Environment env) {
+            return Integer.parseInt(env.properties().getProperty("jcompilo.cache.remote.timeout", String.valueOf(DEFAULT_TIMEOUT)));
+        }
+    }
+}
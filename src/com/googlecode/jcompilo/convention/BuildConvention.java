@@ -1,26 +1,45 @@
 package com.googlecode.jcompilo.convention;
 
 import com.googlecode.jcompilo.Build;
+import com.googlecode.jcompilo.Compiler;
 import com.googlecode.jcompilo.CompileOption;
 import com.googlecode.jcompilo.CompileProcessor;
 import com.googlecode.jcompilo.Environment;
+import com.googlecode.jcompilo.Metrics;
+import com.googlecode.jcompilo.Trace;
+import com.googlecode.jcompilo.cache.BuildCache;
+import com.googlecode.jcompilo.incremental.DependencyGraph;
+import com.googlecode.jcompilo.snapshot.Snapshot;
 import com.googlecode.jcompilo.tests.Tests;
+import com.googlecode.jcompilo.zip.ZipWriter;
 import com.googlecode.shavenmaven.PomGenerator;
+import com.googlecode.totallylazy.Option;
 import com.googlecode.totallylazy.Sequence;
-import com.googlecode.totallylazy.io.Zip;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import static com.googlecode.jcompilo.Compiler.CPUS;
 import static com.googlecode.jcompilo.Compiler.compiler;
 import static com.googlecode.jcompilo.MoveToTL.write;
+import static com.googlecode.jcompilo.cache.BuildCache.buildCache;
 import static com.googlecode.jcompilo.convention.ReleaseFile.constructors.releaseFile;
 import static com.googlecode.jcompilo.convention.ReleaseFile.functions.file;
+import static com.googlecode.jcompilo.convention.Watcher.watcher;
+import static com.googlecode.jcompilo.incremental.DependencyGraph.dependencyGraph;
+import static com.googlecode.jcompilo.incremental.DependencyGraph.graphFile;
+import static com.googlecode.jcompilo.incremental.HeaderJar.headerJar;
+import static com.googlecode.jcompilo.snapshot.Snapshot.snapshot;
 import static com.googlecode.jcompilo.tests.Tests.tests;
 import static com.googlecode.totallylazy.Callers.callConcurrently;
 import static com.googlecode.totallylazy.Closeables.using;
@@ -29,11 +48,15 @@ import static com.googlecode.totallylazy.functions.Functions.and;
 import static com.googlecode.totallylazy.Option.some;
 import static com.googlecode.totallylazy.Sequences.cons;
 import static com.googlecode.totallylazy.Sequences.sequence;
+import static com.googlecode.totallylazy.Strings.endsWith;
 import static com.googlecode.totallylazy.functions.Functions.andPair;
 import static java.lang.Boolean.parseBoolean;
 import static java.lang.String.format;
 
 public abstract class BuildConvention extends LocationsConvention implements Build {
+    private volatile Sequence<File> dependencies;
+    private volatile Snapshot libraries = Snapshot.snapshot();
+
     protected BuildConvention() {
         this(Environment.constructors.environment());
     }
@@ -44,8 +67,8 @@ public abstract class BuildConvention extends LocationsConvention implements Bui
 
     @Override
     public boolean build() throws Exception {
+        prefetch();
         return sequence(
-                clean(),
                 compile(),
                 parallel(this::test, this::Package)).
                 reduceRight(andPair());
@@ -53,38 +76,122 @@ public abstract class BuildConvention extends LocationsConvention implements Bui
 
     @Override
     public boolean clean() throws Exception {
-        stage("clean");
-        env.out().printf("   [delete] Deleting directory: %s%n", artifactsDir());
-        return delete(artifactsDir());
+        try (Metrics.Stage ignored = env.metrics().stage("clean"); Trace.Span span = env.trace().span("stage", "clean")) {
+            stage("clean");
+            env.out().printf("   [delete] Deleting directory: %s%n", artifactsDir());
+            return delete(artifactsDir());
+        }
     }
 
     @Override
     public boolean compile() throws Exception {
-        stage("compile");
-        return compiler(env, dependencies(), compileOptions()).
-                compile(srcDir(), mainJar());
+        try (Metrics.Stage ignored = env.metrics().stage("compile"); Trace.Span span = env.trace().span("stage", "compile")) {
+            stage("compile");
+            return mainCompiler().compile(srcDir(), mainJar());
+        }
     }
 
     @Override
     public boolean test() throws Exception {
-        stage("test");
-        Sequence<File> productionJars = cons(mainJar(), dependencies());
-        Tests tests = tests(env, productionJars, testThreads(), reportsDir(), debug());
-        return compiler(env, productionJars, compileOptions()).
-                add(tests).compile(testDir(), testJar()) &&
-                tests.execute(testJar());
+        try (Metrics.Stage ignored = env.metrics().stage("test"); Trace.Span span = env.trace().span("stage", "test")) {
+            stage("test");
+            Tests tests = testRunner();
+            return testCompiler(tests).compile(testDir(), testJar()) &&
+                    tests.execute(testJar());
+        }
     }
 
     @Override
     public boolean Package() throws IOException {
-        stage("package");
-        zip(srcDir(), sourcesJar());
-        zip(testDir(), testSourcesJar());
-        generateReleaseProperties();
-        generatePom();
+        try (Metrics.Stage ignored = env.metrics().stage("package"); Trace.Span span = env.trace().span("stage", "package")) {
+            stage("package");
+            zip(srcDir(), sourcesJar());
+            zip(testDir(), testSourcesJar());
+            generateReleaseProperties();
+            generatePom();
+            return true;
+        }
+    }
+
+    @Override
+    public boolean watch() throws Exception {
+        boolean built = compile() && test();
+        boolean success = built;
+        try (Watcher watcher = watcher(watchDebounce(), srcDir(), testDir())) {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (success) env.out().printf("%n    [watch] Watching %s and %s%n", srcDir(), testDir());
+                else env.out().printf("%n    [watch] Build failed, waiting for changes in %s and %s%n", srcDir(), testDir());
+                Set<File> changed = watcher.take();
+                long start = System.nanoTime();
+                if (built) success = rebuild(changed);
+                else success = built = compile() && test();
+                if (success) env.out().printf("    [watch] Done in %sms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
         return true;
     }
 
+    private boolean rebuild(Set<File> changed) throws Exception {
+        Set<String> sources = relative(srcDir(), changed);
+        Set<String> testSources = relative(testDir(), changed);
+        if (!sources.isEmpty() && !compile()) return false;
+        stage("test");
+        Tests tests = testRunner();
+        return testCompiler(tests).compile(testDir(), testJar()) &&
+                tests.execute(testJar(), affectedTests(sources, testSources));
+    }
+
+    protected void prefetch() throws Exception {
+        Option<BuildCache> cache = buildCache(env);
+        if (cache.isEmpty() || !cache.get().remote()) return;
+        List<String> keys = new ArrayList<String>();
+        for (String key : mainCompiler().key(srcDir(), mainJar())) keys.add(key);
+        for (String key : testCompiler(testRunner()).key(testDir(), testJar())) keys.add(key);
+        cache.get().prefetch(keys);
+    }
+
+    private Compiler mainCompiler() {
+        return compiler(env, dependencies(), compileOptions());
+    }
+
+    private Compiler testCompiler(Tests tests) throws IOException {
+        return compiler(env, compileClasspath(), compileOptions()).add(tests);
+    }
+
+    private Tests testRunner() {
+        return tests(env, cons(mainJar(), dependencies()), testThreads(), reportsDir(), debug());
+    }
+
+    protected Sequence<File> compileClasspath() throws IOException {
+        return cons(headerJars() ? headerJar(mainJar()) : mainJar(), dependencies());
+    }
+
+    protected boolean headerJars() {
+        return parseBoolean(env.properties().getProperty("jcompilo.headers", "true"));
+    }
+
+    protected long watchDebounce() {
+        return Long.parseLong(env.properties().getProperty("jcompilo.watch.debounce", "200"));
+    }
+
+    private Set<String> affectedTests(Set<String> sources, Set<String> testSources) {
+        DependencyGraph main = dependencyGraph(graphFile(mainJar()));
+        DependencyGraph test = dependencyGraph(graphFile(testJar()));
+        Set<String> changed = new TreeSet<String>(testSources);
+        changed.addAll(test.dependants(main.outputs(main.affected(sources))));
+        return test.affected(changed);
+    }
+
+    private static Set<String> relative(File root, Set<File> files) {
+        Set<String> result = new TreeSet<String>();
+        Path base = root.getAbsoluteFile().toPath();
+        for (File file : files) {
+            Path path = file.getAbsoluteFile().toPath();
+            if (path.startsWith(base)) result.add(base.relativize(path).toString().replace(File.separatorChar, '/'));
+        }
+        return result;
+    }
+
     @Override
     public Iterable<CompileOption> compileOptions() {
         return CompileProcessor.DEFAULT_OPTIONS;
@@ -92,7 +199,12 @@ public abstract class BuildConvention extends LocationsConvention implements Bui
 
     @Override
     public Iterable<File> dependencies() {
-        return recursiveFiles(libDir()).filter(hasSuffix("jar")).realise();
+        Snapshot snapshot = snapshot(libDir(), libraries);
+        if (dependencies == null || !snapshot.changed(libraries).isEmpty()) {
+            dependencies = sequence(snapshot.names()).filter(endsWith(".jar")).map(snapshot::file).realise();
+            libraries = snapshot;
+        }
+        return dependencies;
     }
 
     protected boolean debug() {
@@ -159,7 +271,10 @@ public abstract class BuildConvention extends LocationsConvention implements Bui
     }
 
     protected void zip(File source, File destination) throws IOException {
-        Number size = Zip.zip(source, destination);
+        Number size;
+        try (Trace.Span ignored = env.trace().span("write", destination.getName())) {
+            size = ZipWriter.zip(env, source, destination);
+        }
         env.out().printf("      [zip] Zipped %s files: %s%n", size, destination.getAbsoluteFile());
     }
 
@@ -0,0 +1,84 @@
+package com.googlecode.jcompilo.convention;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+public class Watcher implements Closeable {
+    private final WatchService service;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<WatchKey, Path>();
+    private final long debounce;
+
+    private Watcher(WatchService service, long debounce) {
+        this.service = service;
+        this.debounce = debounce;
+    }
+
+    public static Watcher watcher(long debounce, File... roots) throws IOException {
+        Watcher watcher = new Watcher(FileSystems.getDefault().newWatchService(), debounce);
+        for (File root : roots) if (root.isDirectory()) watcher.register(root.toPath());
+        return watcher;
+    }
+
+    public Set<File> take() throws InterruptedException, IOException {
+        Set<File> changed = new TreeSet<File>();
+        WatchKey key = service.take();
+        while (key != null) {
+            collect(key, changed);
+            key = service.poll(debounce, TimeUnit.MILLISECONDS);
+        }
+        return changed;
+    }
+
+    private void collect(WatchKey key, Set<File> changed) throws IOException {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null || event.kind() == OVERFLOW) continue;
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                register(path);
+                try (Stream<Path> files = Files.walk(path)) {
+                    files.filter(Files::isRegularFile).forEach(file -> changed.add(file.toFile()));
+                }
+            } else if (!Files.isDirectory(path)) {
+                changed.add(path.toFile());
+            }
+        }
+        if (!key.reset()) directories.remove(key);
+    }
+
+    private void register(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                directories.put(directory.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+}
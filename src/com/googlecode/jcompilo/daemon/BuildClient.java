@@ -0,0 +1,78 @@
+package com.googlecode.jcompilo.daemon;
+
+import com.googlecode.jcompilo.Environment;
+import com.googlecode.totallylazy.Option;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.googlecode.totallylazy.Option.none;
+import static com.googlecode.totallylazy.Option.some;
+
+public class BuildClient {
+    private final Environment env;
+
+    private BuildClient(Environment env) {
+        this.env = env;
+    }
+
+    public static BuildClient buildClient(Environment env) {
+        return new BuildClient(env);
+    }
+
+    public Option<Integer> build(List<String> targets) throws IOException {
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), BuildDaemon.port(env));
+        } catch (ConnectException e) {
+            return none();
+        }
+        try {
+            send(new DataOutputStream(socket.getOutputStream()), targets);
+            return some(receive(new DataInputStream(new BufferedInputStream(socket.getInputStream())), env.out()));
+        } finally {
+            socket.close();
+        }
+    }
+
+    private void send(DataOutputStream out, List<String> targets) throws IOException {
+        out.writeUTF(env.workingDirectory().getAbsolutePath());
+        out.writeInt(targets.size());
+        for (String target : targets) out.writeUTF(target);
+        Map<String, String> properties = forwardedProperties();
+        out.writeInt(properties.size());
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        out.flush();
+    }
+
+    private Map<String, String> forwardedProperties() {
+        Map<String, String> result = new TreeMap<String, String>();
+        for (String name : env.properties().stringPropertyNames()) {
+            if (name.startsWith("jcompilo.") || name.equals("build.number")) result.put(name, env.properties().getProperty(name));
+        }
+        return result;
+    }
+
+    private static int receive(DataInputStream in, OutputStream console) throws IOException {
+        byte[] buffer = new byte[8192];
+        for (int length = in.readInt(); length != FramedOutputStream.END; length = in.readInt()) {
+            if (buffer.length < length) buffer = new byte[length];
+            in.readFully(buffer, 0, length);
+            console.write(buffer, 0, length);
+        }
+        console.flush();
+        return in.readInt();
+    }
+}
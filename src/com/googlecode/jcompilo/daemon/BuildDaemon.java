@@ -0,0 +1,166 @@
+package com.googlecode.jcompilo.daemon;
+
+import com.googlecode.jcompilo.BootStrap;
+import com.googlecode.jcompilo.Environment;
+import com.googlecode.totallylazy.Option;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static com.googlecode.jcompilo.Environment.constructors.environment;
+import static com.googlecode.jcompilo.Environment.constructors.properties;
+import static com.googlecode.jcompilo.daemon.Stamp.stamp;
+
+public class BuildDaemon implements Runnable, Closeable {
+    public static final int DEFAULT_PORT = 7009;
+    private static final String[] JVM_PROPERTIES = {"java.", "jdk.", "sun.", "os.", "user.", "file.", "line.", "path."};
+    private final Environment env;
+    private final ServerSocket server;
+    private final Map<File, WarmBuild> builds = new HashMap<File, WarmBuild>();
+
+    private BuildDaemon(Environment env, ServerSocket server) {
+        this.env = env;
+        this.server = server;
+    }
+
+    public static void main(String[] args) throws Exception {
+        buildDaemon(environment()).run();
+    }
+
+    public static BuildDaemon buildDaemon(Environment env) throws IOException {
+        ServerSocket server = new ServerSocket(port(env), 0, InetAddress.getLoopbackAddress());
+        server.setSoTimeout((int) TimeUnit.MINUTES.toMillis(Long.valueOf(env.properties().getProperty("jcompilo.daemon.idle", "180"))));
+        return new BuildDaemon(env, server);
+    }
+
+    public static int port(Environment env) {
+        return Integer.valueOf(env.properties().getProperty("jcompilo.daemon.port", String.valueOf(DEFAULT_PORT)));
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        env.out().printf("daemon: listening on %s%n", server.getLocalSocketAddress());
+        try {
+            while (!server.isClosed()) {
+                try (Socket socket = server.accept()) {
+                    serve(socket);
+                } catch (SocketTimeoutException e) {
+                    env.out().println("daemon: idle timeout reached, shutting down");
+                    return;
+                } catch (Throwable e) {
+                    env.out().printf("daemon: %s%n", e);
+                }
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        File workingDirectory = new File(in.readUTF());
+        List<String> targets = new ArrayList<String>();
+        for (int i = in.readInt(); i > 0; i--) targets.add(in.readUTF());
+        Properties properties = new Properties(properties(jvmProperties()));
+        for (int i = in.readInt(); i > 0; i--) properties.setProperty(in.readUTF(), in.readUTF());
+
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        PrintStream console = new PrintStream(new BufferedOutputStream(new FramedOutputStream(out)), true);
+        int exitCode;
+        try {
+            exitCode = bootStrap(environment(workingDirectory, properties, console)).build(targets);
+        } catch (Throwable e) {
+            e.printStackTrace(console);
+            WarmBuild warm = builds.remove(workingDirectory.getAbsoluteFile());
+            if (warm != null) warm.close();
+            exitCode = -1;
+        }
+        console.flush();
+        out.writeInt(FramedOutputStream.END);
+        out.writeInt(exitCode);
+        out.flush();
+    }
+
+    private static Properties jvmProperties() {
+        Properties result = new Properties();
+        Properties system = System.getProperties();
+        for (String name : system.stringPropertyNames()) {
+            if (jvmProperty(name)) result.setProperty(name, system.getProperty(name));
+        }
+        return result;
+    }
+
+    private static boolean jvmProperty(String name) {
+        for (String prefix : JVM_PROPERTIES) if (name.startsWith(prefix)) return true;
+        return false;
+    }
+
+    private BootStrap bootStrap(final Environment environment) {
+        final File workingDirectory = environment.workingDirectory().getAbsoluteFile();
+        return new BootStrap(environment) {
+            @Override
+            public Class<?> findBuildClass(Option<File> buildFile) throws Exception {
+                WarmBuild warm = builds.get(workingDirectory);
+                if (warm != null && warm.stamp.equals(stamp(workingDirectory, buildFile))) return warm.buildClass;
+                if (warm != null) {
+                    environment.out().println("daemon: build file or lib changed, evicting cached build");
+                    warm.close();
+                }
+                Class<?> buildClass = super.findBuildClass(buildFile);
+                builds.put(workingDirectory, new WarmBuild(stamp(workingDirectory, buildFile), buildClass));
+                return buildClass;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+        for (WarmBuild warmBuild : builds.values()) warmBuild.close();
+        builds.clear();
+    }
+
+    private static class WarmBuild implements Closeable {
+        private final String stamp;
+        private final Class<?> buildClass;
+
+        private WarmBuild(String stamp, Class<?> buildClass) {
+            this.stamp = stamp;
+            this.buildClass = buildClass;
+        }
+
+        @Override
+        public void close() {
+            ClassLoader daemonLoader = BuildDaemon.class.getClassLoader();
+            for (ClassLoader loader = buildClass.getClassLoader(); loader != null && loader != daemonLoader; loader = loader.getParent()) {
+                if (loader instanceof URLClassLoader) try {
+                    ((URLClassLoader) loader).close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.googlecode.jcompilo.daemon;
+
+import com.googlecode.jcompilo.snapshot.Snapshot;
+import com.googlecode.totallylazy.Option;
+
+import java.io.File;
+
+import static com.googlecode.jcompilo.snapshot.Snapshot.snapshot;
+import static com.googlecode.totallylazy.Files.directory;
+import static com.googlecode.totallylazy.Files.files;
+import static com.googlecode.totallylazy.Files.hasSuffix;
+
+class Stamp {
+    static String stamp(File workingDirectory, Option<File> buildFile) {
+        StringBuilder builder = new StringBuilder();
+        if (!buildFile.isEmpty()) append(builder, buildFile.get());
+        for (File file : files(directory(workingDirectory, "build")).filter(hasSuffix("dependencies"))) append(builder, file);
+        Snapshot lib = snapshot(directory(workingDirectory, "lib"));
+        for (String name : lib.names()) {
+            if (name.endsWith(".jar")) builder.append(lib.file(name).getPath()).append(':').append(lib.size(name)).append(':').append(lib.modified(name)).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, File file) {
+        builder.append(file.getPath()).append(':').append(file.length()).append(':').append(file.lastModified()).append('\n');
+    }
+}
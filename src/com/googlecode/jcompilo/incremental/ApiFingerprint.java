@@ -0,0 +1,120 @@
+package com.googlecode.jcompilo.incremental;
+
+import com.googlecode.jcompilo.Digests;
+import jdk.internal.org.objectweb.asm.tree.AnnotationNode;
+import jdk.internal.org.objectweb.asm.tree.ClassNode;
+import jdk.internal.org.objectweb.asm.tree.FieldNode;
+import jdk.internal.org.objectweb.asm.tree.InnerClassNode;
+import jdk.internal.org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.googlecode.jcompilo.asm.Asm.classNode;
+import static jdk.internal.org.objectweb.asm.Opcodes.ACC_FINAL;
+import static jdk.internal.org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static jdk.internal.org.objectweb.asm.Opcodes.ACC_STATIC;
+import static jdk.internal.org.objectweb.asm.Opcodes.ACC_SUPER;
+import static jdk.internal.org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
+
+public class ApiFingerprint {
+    private ApiFingerprint() {
+    }
+
+    public static String apiFingerprint(byte[] bytes) {
+        return apiFingerprint(classNode(bytes));
+    }
+
+    public static String apiFingerprint(ClassNode node) {
+        return Digests.sha1(api(node));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static String constantFingerprint(ClassNode node) {
+        List<String> constants = new ArrayList<String>();
+        for (FieldNode field : (List<FieldNode>) node.fields) {
+            if (field.value == null || hidden(field.access) || (field.access & (ACC_STATIC | ACC_FINAL)) != (ACC_STATIC | ACC_FINAL)) continue;
+            constants.add(field.name + ':' + Digests.sha1(field.desc + '=' + value(field.value)));
+        }
+        Collections.sort(constants);
+        return String.join(",", constants);
+    }
+
+    public static Set<String> constantEntries(String constants) {
+        Set<String> result = new TreeSet<String>();
+        if (constants != null && !constants.isEmpty()) result.addAll(Arrays.asList(constants.split(",")));
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    static String api(ClassNode node) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("class ").append(node.access & ~ACC_SUPER).append(' ').append(node.name).append(' ').append(node.signature).
+                append(" extends ").append(node.superName).append(" implements ").append(sorted(node.interfaces)).append('\n');
+        annotations(builder, node.visibleAnnotations, node.invisibleAnnotations);
+
+        List<String> members = new ArrayList<String>();
+        for (FieldNode field : (List<FieldNode>) node.fields) {
+            if (hidden(field.access)) continue;
+            StringBuilder member = new StringBuilder("field ").append(field.access).append(' ').append(field.name).append(' ').append(field.desc).
+                    append(' ').append(field.signature).append(" = ").append(value(field.value)).append('\n');
+            annotations(member, field.visibleAnnotations, field.invisibleAnnotations);
+            members.add(member.toString());
+        }
+        for (MethodNode method : (List<MethodNode>) node.methods) {
+            if (hidden(method.access)) continue;
+            StringBuilder member = new StringBuilder("method ").append(method.access).append(' ').append(method.name).append(method.desc).
+                    append(' ').append(method.signature).append(" throws ").append(sorted(method.exceptions)).
+                    append(" default ").append(value(method.annotationDefault)).append('\n');
+            annotations(member, method.visibleAnnotations, method.invisibleAnnotations);
+            if (method.visibleParameterAnnotations != null) for (List<?> annotations : method.visibleParameterAnnotations) annotations(member, annotations, null);
+            if (method.invisibleParameterAnnotations != null) for (List<?> annotations : method.invisibleParameterAnnotations) annotations(member, annotations, null);
+            members.add(member.toString());
+        }
+        for (InnerClassNode inner : (List<InnerClassNode>) node.innerClasses) {
+            if (node.name.equals(inner.outerName) && !hidden(inner.access)) members.add("inner " + inner.access + ' ' + inner.name + '\n');
+        }
+        Collections.sort(members);
+        for (String member : members) builder.append(member);
+        return builder.toString();
+    }
+
+    private static boolean hidden(int access) {
+        return (access & (ACC_PRIVATE | ACC_SYNTHETIC)) != 0;
+    }
+
+    private static List<String> sorted(List<?> values) {
+        List<String> result = new ArrayList<String>();
+        if (values != null) for (Object value : values) result.add(String.valueOf(value));
+        Collections.sort(result);
+        return result;
+    }
+
+    private static void annotations(StringBuilder builder, List<?> visible, List<?> invisible) {
+        List<String> result = new ArrayList<String>();
+        for (List<?> annotations : Arrays.asList(visible, invisible)) {
+            if (annotations == null) continue;
+            for (Object annotation : annotations) result.add(value(annotation));
+        }
+        Collections.sort(result);
+        for (String annotation : result) builder.append("  @").append(annotation).append('\n');
+    }
+
+    private static String value(Object value) {
+        if (value instanceof AnnotationNode) {
+            AnnotationNode annotation = (AnnotationNode) value;
+            return annotation.desc + value(annotation.values);
+        }
+        if (value instanceof List) {
+            StringBuilder builder = new StringBuilder("[");
+            for (Object item : (List<?>) value) builder.append(value(item)).append(',');
+            return builder.append(']').toString();
+        }
+        if (value instanceof String[]) return Arrays.toString((String[]) value);
+        return String.valueOf(value);
+    }
+}
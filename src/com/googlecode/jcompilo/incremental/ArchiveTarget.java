@@ -0,0 +1,121 @@
+package com.googlecode.jcompilo.incremental;
+
+import com.googlecode.jcompilo.ByteBufferDestination;
+import com.googlecode.jcompilo.Inputs;
+import com.googlecode.jcompilo.MemoryStore;
+import com.googlecode.jcompilo.zip.CentralDirectory;
+import com.googlecode.jcompilo.zip.ZipEntryRecord;
+import com.googlecode.jcompilo.zip.ZipWriter;
+import com.googlecode.totallylazy.io.Destination;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+
+import static com.googlecode.jcompilo.MemoryStore.memoryStore;
+import static com.googlecode.jcompilo.zip.CentralDirectory.centralDirectory;
+import static com.googlecode.jcompilo.zip.ZipEntryResource.zipEntryResource;
+import static com.googlecode.jcompilo.zip.ZipWriter.zipWriter;
+
+public class ArchiveTarget implements Target {
+    private final File archive;
+    private final CentralDirectory existing;
+    private final int level;
+
+    private ArchiveTarget(File archive, CentralDirectory existing, int level) {
+        this.archive = archive;
+        this.existing = existing;
+        this.level = level;
+    }
+
+    public static ArchiveTarget archiveTarget(File archive) {
+        return archiveTarget(archive, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public static ArchiveTarget archiveTarget(File archive, int level) {
+        return new ArchiveTarget(archive, existing(archive), level);
+    }
+
+    private static CentralDirectory existing(File archive) {
+        if (!archive.isFile()) return null;
+        try {
+            return centralDirectory(archive);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Map<String, ZipEntryRecord> entries() {
+        return existing == null ? Collections.<String, ZipEntryRecord>emptyMap() : existing.entries();
+    }
+
+    @Override
+    public boolean contains(String output) {
+        return entries().containsKey(output);
+    }
+
+    @Override
+    public Inputs classes(Iterable<String> outputs) throws IOException {
+        MemoryStore classes = memoryStore();
+        for (String output : outputs) {
+            ZipEntryRecord entry = entries().get(output);
+            if (output.endsWith(".class") && entry != null)
+                classes.put(zipEntryResource(existing, entry));
+        }
+        return classes;
+    }
+
+    @Override
+    public void remove(Iterable<String> outputs) {
+    }
+
+    @Override
+    public Destination destination(final Set<String> retained) throws IOException {
+        final File temporary = new File(archive.getPath() + ".tmp");
+        final ZipWriter writer = zipWriter(new FileOutputStream(temporary), level);
+        final Set<String> written = Collections.synchronizedSet(new HashSet<String>());
+        return new ByteBufferDestination() {
+            @Override
+            public OutputStream destination(String name, Date modified) throws IOException {
+                written.add(name);
+                return writer.destination(name, modified);
+            }
+
+            @Override
+            public void write(String name, Date modified, ByteBuffer buffer) throws IOException {
+                written.add(name);
+                writer.write(name, modified, buffer);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    for (String name : new TreeSet<String>(retained)) {
+                        ZipEntryRecord entry = entries().get(name);
+                        if (entry != null && !written.contains(name)) writer.raw(entry, existing.raw(entry));
+                    }
+                    writer.close();
+                } finally {
+                    ArchiveTarget.this.close();
+                }
+                Files.move(temporary.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (existing != null) existing.close();
+    }
+}
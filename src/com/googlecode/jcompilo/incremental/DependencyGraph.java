@@ -0,0 +1,340 @@
+package com.googlecode.jcompilo.incremental;
+
+import com.googlecode.jcompilo.Digests;
+import com.googlecode.jcompilo.Outputs;
+import com.googlecode.jcompilo.Resource;
+import com.googlecode.jcompilo.bytecode.ClassInfo;
+import jdk.internal.org.objectweb.asm.tree.ClassNode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.googlecode.jcompilo.asm.Asm.classNode;
+import static com.googlecode.jcompilo.incremental.ApiFingerprint.apiFingerprint;
+import static com.googlecode.jcompilo.incremental.ApiFingerprint.constantEntries;
+import static com.googlecode.jcompilo.incremental.ApiFingerprint.constantFingerprint;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class DependencyGraph {
+    private static final String CLASS = ".class";
+    private String classpath;
+    private volatile boolean incomplete;
+    private final Map<String, Source> sources;
+    private final Map<String, Set<String>> references;
+    private final Map<String, String> fingerprints;
+    private final Map<String, String> constants;
+    private final Map<String, Set<String>> recordedOutputs = new ConcurrentHashMap<String, Set<String>>();
+    private final Map<String, Set<String>> recordedReferences = new ConcurrentHashMap<String, Set<String>>();
+    private final Map<String, String> recordedFingerprints = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> recordedConstants = new ConcurrentHashMap<String, String>();
+
+    private DependencyGraph(String classpath) {
+        this.classpath = classpath;
+        this.sources = new TreeMap<String, Source>();
+        this.references = new HashMap<String, Set<String>>();
+        this.fingerprints = new HashMap<String, String>();
+        this.constants = new HashMap<String, String>();
+    }
+
+    public static DependencyGraph dependencyGraph() {
+        return new DependencyGraph("");
+    }
+
+    public static DependencyGraph dependencyGraph(File file) {
+        if (!file.isFile()) return dependencyGraph();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+            return read(reader);
+        } catch (IOException | RuntimeException e) {
+            return dependencyGraph();
+        }
+    }
+
+    public static File graphFile(File destination) {
+        return new File(destination.getAbsoluteFile().getParentFile(), destination.getName() + ".graph");
+    }
+
+    public Set<String> changed(Map<String, Long> current, String classpath) {
+        return changed(current, classpath, Collections.<String>emptySet());
+    }
+
+    public Set<String> changed(Map<String, Long> current, String classpath, Set<String> unchanged) {
+        Set<String> changed = new TreeSet<String>();
+        if (!this.classpath.equals(classpath)) {
+            changed.addAll(sources.keySet());
+            changed.addAll(current.keySet());
+            this.classpath = classpath;
+            return changed;
+        }
+        for (Map.Entry<String, Long> entry : current.entrySet()) {
+            Source source = sources.get(entry.getKey());
+            if (source == null || (source.modified != entry.getValue() && !unchanged.contains(entry.getKey()))) changed.add(entry.getKey());
+        }
+        for (String name : sources.keySet()) if (!current.containsKey(name)) changed.add(name);
+        return changed;
+    }
+
+    public Set<String> dependants(Set<String> outputs) {
+        Set<String> dependants = new TreeSet<String>();
+        if (outputs.isEmpty()) return dependants;
+        for (Map.Entry<String, Source> entry : sources.entrySet()) {
+            for (String output : entry.getValue().outputs) {
+                for (String reference : references(output)) {
+                    if (outputs.contains(reference)) dependants.add(entry.getKey());
+                }
+            }
+        }
+        return dependants;
+    }
+
+    public Map<String, String> fingerprints(Iterable<String> names) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (String name : names) {
+            Source source = sources.get(name);
+            if (source == null) continue;
+            for (String output : source.outputs) result.put(output, fingerprint(output));
+        }
+        return result;
+    }
+
+    public Map<String, String> constants(Iterable<String> names) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (String name : names) {
+            Source source = sources.get(name);
+            if (source == null) continue;
+            for (String output : source.outputs) result.put(output, constant(output));
+        }
+        return result;
+    }
+
+    public Set<String> constantChanges(Map<String, String> before) {
+        Set<String> changed = new TreeSet<String>();
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            Set<String> old = constantEntries(entry.getValue());
+            Set<String> current = constantEntries(constant(entry.getKey()));
+            for (String constant : old) if (!current.contains(constant)) changed.add(constant.substring(0, constant.indexOf(':')));
+            for (String constant : current) if (!old.contains(constant)) changed.add(constant.substring(0, constant.indexOf(':')));
+        }
+        return changed;
+    }
+
+    private String constant(String output) {
+        String constant = constants.get(output);
+        return constant == null ? "" : constant;
+    }
+
+    public Set<String> apiChanges(Map<String, String> before) {
+        Set<String> changed = new TreeSet<String>();
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            if (!entry.getValue().equals(fingerprints.get(entry.getKey()))) changed.add(entry.getKey());
+        }
+        return changed;
+    }
+
+    public String api() {
+        StringBuilder builder = new StringBuilder();
+        for (String output : outputs()) builder.append(output).append('=').append(fingerprint(output)).append('\t').append(constant(output)).append('\n');
+        return Digests.sha1(builder.toString());
+    }
+
+    public boolean complete() {
+        return !incomplete;
+    }
+
+    private String fingerprint(String output) {
+        String fingerprint = fingerprints.get(output);
+        return fingerprint == null ? "" : fingerprint;
+    }
+
+    public Set<String> remove(Iterable<String> names) {
+        Set<String> outputs = new TreeSet<String>();
+        for (String name : names) {
+            Source source = sources.remove(name);
+            if (source == null) continue;
+            for (String output : source.outputs) {
+                outputs.add(output);
+                references.remove(output);
+                fingerprints.remove(output);
+                constants.remove(output);
+            }
+        }
+        return outputs;
+    }
+
+    public Set<String> missing(Target target) {
+        Set<String> missing = new TreeSet<String>();
+        for (Map.Entry<String, Source> entry : sources.entrySet()) {
+            for (String output : entry.getValue().outputs) {
+                if (!target.contains(output)) missing.add(entry.getKey());
+            }
+        }
+        return missing;
+    }
+
+    public Set<String> outputs() {
+        Set<String> outputs = new TreeSet<String>();
+        for (Source source : sources.values()) outputs.addAll(source.outputs);
+        return outputs;
+    }
+
+    public Set<String> outputs(Iterable<String> names) {
+        Set<String> outputs = new TreeSet<String>();
+        for (String name : names) {
+            Source source = sources.get(name);
+            if (source != null) outputs.addAll(source.outputs);
+        }
+        return outputs;
+    }
+
+    public Set<String> affected(Set<String> names) {
+        Set<String> affected = new TreeSet<String>(names);
+        for (Set<String> frontier = names; !frontier.isEmpty(); ) {
+            Set<String> dependants = dependants(outputs(frontier));
+            dependants.removeAll(affected);
+            affected.addAll(dependants);
+            frontier = dependants;
+        }
+        return affected;
+    }
+
+    public Set<String> references(String output) {
+        Set<String> result = references.get(output);
+        return result == null ? Collections.<String>emptySet() : result;
+    }
+
+    public Outputs recorder(final Outputs outputs, final Set<String> compiling) {
+        return resource -> {
+            record(resource, compiling);
+            outputs.put(resource);
+        };
+    }
+
+    private void record(Resource resource, Set<String> compiling) {
+        String name = resource.name();
+        if (!name.endsWith(CLASS)) {
+            if (compiling.contains(name)) recorded(recordedOutputs, name).add(name);
+            return;
+        }
+        ClassInfo info = ClassInfo.classInfo(resource.bytes());
+        String source = source(info, compiling);
+        if (source == null) {
+            incomplete = true;
+            return;
+        }
+        recorded(recordedOutputs, source).add(name);
+        ClassNode node = classNode(resource.bytes());
+        recordedFingerprints.put(name, apiFingerprint(node));
+        recordedConstants.put(name, constantFingerprint(node));
+        Set<String> references = recorded(recordedReferences, name);
+        for (String reference : info.references) references.add(reference + CLASS);
+    }
+
+    private static String source(ClassInfo info, Set<String> compiling) {
+        String packageName = info.name.substring(0, info.name.lastIndexOf('/') + 1);
+        if (info.sourceFile != null && compiling.contains(packageName + info.sourceFile)) return packageName + info.sourceFile;
+        int inner = info.name.indexOf('$', packageName.length());
+        String outer = (inner < 0 ? info.name : info.name.substring(0, inner)) + ".java";
+        if (compiling.contains(outer)) return outer;
+        String only = null;
+        for (String name : compiling) {
+            if (!name.endsWith(".java")) continue;
+            if (only != null) return null;
+            only = name;
+        }
+        return only;
+    }
+
+    private static Set<String> recorded(Map<String, Set<String>> map, String key) {
+        Set<String> result = map.get(key);
+        if (result != null) return result;
+        map.putIfAbsent(key, Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+        return map.get(key);
+    }
+
+    public void compiled(Map<String, Long> compiled) {
+        for (Map.Entry<String, Long> entry : compiled.entrySet()) {
+            Set<String> outputs = recordedOutputs.get(entry.getKey());
+            sources.put(entry.getKey(), new Source(entry.getValue(), outputs == null ? Collections.<String>emptySet() : new TreeSet<String>(outputs)));
+        }
+        for (Map.Entry<String, Set<String>> entry : recordedReferences.entrySet()) {
+            references.put(entry.getKey(), new TreeSet<String>(entry.getValue()));
+        }
+        fingerprints.putAll(recordedFingerprints);
+        constants.putAll(recordedConstants);
+        recordedOutputs.clear();
+        recordedReferences.clear();
+        recordedFingerprints.clear();
+        recordedConstants.clear();
+    }
+
+    public void save(File file) throws IOException {
+        if (incomplete) {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), UTF_8))) {
+            writer.write("classpath\t" + classpath + "\n");
+            for (Map.Entry<String, Source> entry : sources.entrySet()) {
+                writer.write("S\t" + entry.getKey() + "\t" + entry.getValue().modified + "\n");
+                for (String output : entry.getValue().outputs) {
+                    writer.write("O\t" + output + "\t" + fingerprint(output) + "\t" + constant(output) + "\n");
+                    for (String reference : references(output)) writer.write("R\t" + reference + "\n");
+                }
+            }
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static DependencyGraph read(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        if (header == null || !header.startsWith("classpath\t")) return dependencyGraph();
+        DependencyGraph graph = new DependencyGraph(header.substring("classpath\t".length()));
+        Set<String> outputs = null;
+        Set<String> references = null;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            String[] parts = line.split("\t");
+            switch (parts[0]) {
+                case "S":
+                    outputs = new TreeSet<String>();
+                    graph.sources.put(parts[1], new Source(Long.parseLong(parts[2]), outputs));
+                    break;
+                case "O":
+                    outputs.add(parts[1]);
+                    graph.references.put(parts[1], references = new TreeSet<String>());
+                    if (parts.length > 2) graph.fingerprints.put(parts[1], parts[2]);
+                    if (parts.length > 3) graph.constants.put(parts[1], parts[3]);
+                    break;
+                case "R":
+                    references.add(parts[1]);
+                    break;
+            }
+        }
+        return graph;
+    }
+
+    private static class Source {
+        private final long modified;
+        private final Set<String> outputs;
+
+        private Source(long modified, Set<String> outputs) {
+            this.modified = modified;
+            this.outputs = outputs;
+        }
+    }
+}
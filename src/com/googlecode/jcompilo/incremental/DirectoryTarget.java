@@ -0,0 +1,67 @@
+package com.googlecode.jcompilo.incremental;
+
+import com.googlecode.jcompilo.Inputs;
+import com.googlecode.jcompilo.MemoryStore;
+import com.googlecode.jcompilo.snapshot.Snapshot;
+import com.googlecode.totallylazy.io.Destination;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.googlecode.jcompilo.ChannelDestination.channelDestination;
+import static com.googlecode.jcompilo.MemoryStore.memoryStore;
+import static com.googlecode.jcompilo.Resource.constructors.resource;
+import static com.googlecode.jcompilo.snapshot.Snapshot.snapshot;
+
+public class DirectoryTarget implements Target {
+    private final File directory;
+    private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+    private volatile Snapshot existing;
+
+    private DirectoryTarget(File directory) {
+        this.directory = directory;
+    }
+
+    private Snapshot existing() {
+        if (existing == null) existing = snapshot(directory);
+        return existing;
+    }
+
+    public static DirectoryTarget directoryTarget(File directory) {
+        return new DirectoryTarget(directory);
+    }
+
+    @Override
+    public boolean contains(String output) {
+        return existing().contains(output) && !deleted.contains(output);
+    }
+
+    @Override
+    public Inputs classes(Iterable<String> outputs) throws IOException {
+        MemoryStore classes = memoryStore();
+        for (String output : outputs) {
+            if (output.endsWith(".class") && contains(output))
+                classes.put(resource(new File(directory, output), output, existing().modified(output)));
+        }
+        return classes;
+    }
+
+    @Override
+    public void remove(Iterable<String> outputs) {
+        for (String output : outputs) {
+            deleted.add(output);
+            new File(directory, output).delete();
+        }
+    }
+
+    @Override
+    public Destination destination(Set<String> retained) throws IOException {
+        return channelDestination(directory);
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+}
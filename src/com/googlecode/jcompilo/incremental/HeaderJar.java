@@ -0,0 +1,92 @@
+package com.googlecode.jcompilo.incremental;
+
+import com.googlecode.jcompilo.zip.CentralDirectory;
+import com.googlecode.jcompilo.zip.ZipEntryRecord;
+import com.googlecode.jcompilo.zip.ZipWriter;
+import jdk.internal.org.objectweb.asm.ClassWriter;
+import jdk.internal.org.objectweb.asm.tree.ClassNode;
+import jdk.internal.org.objectweb.asm.tree.FieldNode;
+import jdk.internal.org.objectweb.asm.tree.InnerClassNode;
+import jdk.internal.org.objectweb.asm.tree.MethodNode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.googlecode.jcompilo.asm.Asm.STATIC_CONSTRUCTOR;
+import static com.googlecode.jcompilo.asm.Asm.classNode;
+import static com.googlecode.jcompilo.cache.CacheKey.hash;
+import static com.googlecode.jcompilo.zip.CentralDirectory.centralDirectory;
+import static com.googlecode.jcompilo.zip.ZipWriter.zipWriter;
+import static jdk.internal.org.objectweb.asm.ClassReader.SKIP_CODE;
+import static jdk.internal.org.objectweb.asm.ClassReader.SKIP_DEBUG;
+import static jdk.internal.org.objectweb.asm.ClassReader.SKIP_FRAMES;
+import static jdk.internal.org.objectweb.asm.Opcodes.ACC_BRIDGE;
+import static jdk.internal.org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static jdk.internal.org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class HeaderJar {
+    public static final long MODIFIED = 315532800000L;
+
+    private HeaderJar() {
+    }
+
+    public static File headerJar(File jar) throws IOException {
+        if (!jar.isFile()) return jar;
+        File header = new File(new File(jar.getAbsoluteFile().getParentFile(), "headers"), jar.getName());
+        File hashFile = new File(header.getPath() + ".sha1");
+        String stamp = jar.length() + ":" + jar.lastModified() + ":";
+        String previous = header.isFile() && hashFile.isFile() ? new String(Files.readAllBytes(hashFile.toPath()), UTF_8) : "";
+        if (previous.startsWith(stamp)) return header;
+        String hash = hash(jar);
+        if (hash.equals(previous.substring(previous.lastIndexOf(':') + 1))) {
+            Files.write(hashFile.toPath(), (stamp + hash).getBytes(UTF_8));
+            return header;
+        }
+        header.getParentFile().mkdirs();
+        File temporary = new File(header.getPath() + ".tmp");
+        try (CentralDirectory directory = centralDirectory(jar); ZipWriter writer = zipWriter(new FileOutputStream(temporary))) {
+            for (ZipEntryRecord entry : directory.entries().values()) {
+                if (!entry.name.endsWith(".class")) continue;
+                byte[] bytes = header(directory.bytes(entry));
+                if (bytes != null) writer.write(entry.name, new Date(MODIFIED), ByteBuffer.wrap(bytes));
+            }
+        }
+        if (header.isFile() && Arrays.equals(Files.readAllBytes(temporary.toPath()), Files.readAllBytes(header.toPath()))) temporary.delete();
+        else Files.move(temporary.toPath(), header.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.write(hashFile.toPath(), (stamp + hash).getBytes(UTF_8));
+        return header;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static byte[] header(byte[] bytes) {
+        ClassNode node = classNode(bytes, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
+        if (node.outerClass != null) return null;
+        for (Iterator<FieldNode> fields = ((List<FieldNode>) node.fields).iterator(); fields.hasNext(); ) {
+            if (hidden(fields.next().access)) fields.remove();
+        }
+        for (Iterator<MethodNode> methods = ((List<MethodNode>) node.methods).iterator(); methods.hasNext(); ) {
+            MethodNode method = methods.next();
+            if ((hidden(method.access) && (method.access & ACC_BRIDGE) == 0) || method.name.equals(STATIC_CONSTRUCTOR)) methods.remove();
+        }
+        for (Iterator<InnerClassNode> inners = ((List<InnerClassNode>) node.innerClasses).iterator(); inners.hasNext(); ) {
+            InnerClassNode inner = inners.next();
+            if (inner.outerName == null || inner.innerName == null) inners.remove();
+        }
+        ClassWriter writer = new ClassWriter(0);
+        node.accept(writer);
+        return writer.toByteArray();
+    }
+
+    private static boolean hidden(int access) {
+        return (access & (ACC_PRIVATE | ACC_SYNTHETIC)) != 0;
+    }
+}
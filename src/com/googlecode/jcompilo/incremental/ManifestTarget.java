@@ -0,0 +1,156 @@
+package com.googlecode.jcompilo.incremental;
+
+import com.googlecode.jcompilo.ByteBufferDestination;
+import com.googlecode.jcompilo.Digests;
+import com.googlecode.jcompilo.Environment;
+import com.googlecode.jcompilo.Inputs;
+import com.googlecode.jcompilo.OutputBuffer;
+import com.googlecode.totallylazy.io.Destination;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class ManifestTarget implements Target {
+    private final Environment env;
+    private final Target target;
+    private final File file;
+    private final Map<String, String> previous;
+    private final Map<String, String> current;
+    private final Set<String> kept = ConcurrentHashMap.newKeySet();
+    private final Set<String> removed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    private ManifestTarget(Environment env, Target target, File file, Map<String, String> previous) {
+        this.env = env;
+        this.target = target;
+        this.file = file;
+        this.previous = previous;
+        this.current = new ConcurrentHashMap<String, String>(previous);
+    }
+
+    public static ManifestTarget manifestTarget(Environment env, Target target, File file) {
+        return new ManifestTarget(env, target, file, read(file));
+    }
+
+    public static File manifestFile(File destination) {
+        return new File(destination.getAbsoluteFile().getParentFile(), destination.getName() + ".manifest");
+    }
+
+    public int skipped() {
+        return skipped.get();
+    }
+
+    @Override
+    public boolean contains(String output) {
+        return target.contains(output);
+    }
+
+    @Override
+    public Inputs classes(Iterable<String> outputs) throws IOException {
+        return target.classes(outputs);
+    }
+
+    @Override
+    public void remove(Iterable<String> outputs) {
+        for (String output : outputs) {
+            removed.add(output);
+            kept.remove(output);
+            current.remove(output);
+        }
+    }
+
+    @Override
+    public Destination destination(Set<String> retained) throws IOException {
+        kept.addAll(retained);
+        final Destination destination = target.destination(kept);
+        return new ByteBufferDestination() {
+            @Override
+            public OutputStream destination(final String name, final Date modified) throws IOException {
+                return new OutputBuffer() {
+                    @Override
+                    public void close() throws IOException {
+                        store(destination, name, modified, buffer());
+                    }
+                };
+            }
+
+            @Override
+            public void write(String name, Date modified, ByteBuffer buffer) throws IOException {
+                store(destination, name, modified, buffer);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    destination.close();
+                } finally {
+                    target.remove(removed);
+                    save();
+                }
+                if (skipped() > 0) {
+                    env.out().prefix("   [output] ").printf("Skipped %s unchanged writes%n", skipped());
+                    env.out().clearPrefix();
+                }
+            }
+        };
+    }
+
+    private void store(Destination destination, String name, Date modified, ByteBuffer buffer) throws IOException {
+        String hash = Digests.sha1(buffer);
+        current.put(name, hash);
+        removed.remove(name);
+        if (hash.equals(previous.get(name)) && target.contains(name)) {
+            kept.add(name);
+            skipped.incrementAndGet();
+            return;
+        }
+        ByteBufferDestination.methods.write(destination, name, modified, buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        target.close();
+    }
+
+    private static Map<String, String> read(File file) {
+        Map<String, String> result = new ConcurrentHashMap<String, String>();
+        if (!file.isFile()) return result;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) result.put(line.substring(tab + 1), line.substring(0, tab));
+            }
+        } catch (IOException e) {
+            result.clear();
+        }
+        return result;
+    }
+
+    private void save() throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), UTF_8))) {
+            for (Map.Entry<String, String> entry : new TreeMap<String, String>(current).entrySet())
+                writer.write(entry.getValue() + "\t" + entry.getKey() + "\n");
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
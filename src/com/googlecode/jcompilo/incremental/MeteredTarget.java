@@ -0,0 +1,79 @@
+package com.googlecode.jcompilo.incremental;
+
+import com.googlecode.jcompilo.ByteBufferDestination;
+import com.googlecode.jcompilo.Inputs;
+import com.googlecode.jcompilo.Metrics;
+import com.googlecode.jcompilo.OutputBuffer;
+import com.googlecode.totallylazy.io.Destination;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Set;
+
+public class MeteredTarget implements Target {
+    private final Target target;
+    private final Metrics metrics;
+
+    private MeteredTarget(Target target, Metrics metrics) {
+        this.target = target;
+        this.metrics = metrics;
+    }
+
+    public static MeteredTarget meteredTarget(Target target, Metrics metrics) {
+        return new MeteredTarget(target, metrics);
+    }
+
+    @Override
+    public boolean contains(String output) {
+        return target.contains(output);
+    }
+
+    @Override
+    public Inputs classes(Iterable<String> outputs) throws IOException {
+        return target.classes(outputs);
+    }
+
+    @Override
+    public void remove(Iterable<String> outputs) {
+        target.remove(outputs);
+    }
+
+    @Override
+    public Destination destination(Set<String> retained) throws IOException {
+        final Destination destination = target.destination(retained);
+        return new ByteBufferDestination() {
+            @Override
+            public OutputStream destination(final String name, final Date modified) throws IOException {
+                return new OutputBuffer() {
+                    @Override
+                    public void close() throws IOException {
+                        store(destination, name, modified, buffer());
+                    }
+                };
+            }
+
+            @Override
+            public void write(String name, Date modified, ByteBuffer buffer) throws IOException {
+                store(destination, name, modified, buffer);
+            }
+
+            @Override
+            public void close() throws IOException {
+                destination.close();
+            }
+        };
+    }
+
+    private void store(Destination destination, String name, Date modified, ByteBuffer buffer) throws IOException {
+        int size = buffer.remaining();
+        ByteBufferDestination.methods.write(destination, name, modified, buffer);
+        metrics.increment("bytes_written", size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        target.close();
+    }
+}
@@ -0,0 +1,35 @@
+package com.googlecode.jcompilo.incremental;
+
+import com.googlecode.jcompilo.Inputs;
+import com.googlecode.totallylazy.io.Destination;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+public interface Target extends Closeable {
+    boolean contains(String output);
+
+    Inputs classes(Iterable<String> outputs) throws IOException;
+
+    void remove(Iterable<String> outputs);
+
+    Destination destination(Set<String> retained) throws IOException;
+
+    class constructors {
+        public static Target target(File destination) throws IOException {
+            return target(destination, Deflater.DEFAULT_COMPRESSION);
+        }
+
+        public static Target target(File destination, int level) throws IOException {
+            if (archive(destination)) return ArchiveTarget.archiveTarget(destination, level);
+            return DirectoryTarget.directoryTarget(destination);
+        }
+
+        public static boolean archive(File destination) {
+            return destination.getPath().endsWith(".jar") || destination.getPath().endsWith(".zip");
+        }
+    }
+}
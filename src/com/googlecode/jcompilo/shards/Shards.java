@@ -0,0 +1,157 @@
+package com.googlecode.jcompilo.shards;
+
+import com.googlecode.jcompilo.Inputs;
+import com.googlecode.jcompilo.MemoryStore;
+import com.googlecode.jcompilo.Resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.googlecode.jcompilo.MemoryStore.memoryStore;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class Shards {
+    private static final Pattern QUALIFIED = Pattern.compile("[A-Za-z_$][\\w$]*(?:\\s*\\.\\s*[A-Za-z_$][\\w$]*)+");
+    private final Map<String, List<Resource>> packages;
+    private final Map<String, Set<String>> dependencies;
+
+    private Shards(Map<String, List<Resource>> packages, Map<String, Set<String>> dependencies) {
+        this.packages = packages;
+        this.dependencies = dependencies;
+    }
+
+    public static Shards shards(Inputs sources) {
+        Map<String, List<Resource>> packages = new LinkedHashMap<String, List<Resource>>();
+        for (Resource resource : sources) {
+            String name = packageName(resource.name());
+            List<Resource> resources = packages.get(name);
+            if (resources == null) packages.put(name, resources = new ArrayList<Resource>());
+            resources.add(resource);
+        }
+        Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+        for (Map.Entry<String, List<Resource>> entry : packages.entrySet()) {
+            Set<String> references = new HashSet<String>();
+            for (Resource resource : entry.getValue()) references(new String(resource.bytes(), UTF_8), packages.keySet(), references);
+            references.remove(entry.getKey());
+            dependencies.put(entry.getKey(), references);
+        }
+        return new Shards(packages, dependencies);
+    }
+
+    static String packageName(String name) {
+        int index = name.lastIndexOf('/');
+        return index < 0 ? "" : name.substring(0, index).replace('/', '.');
+    }
+
+    private static void references(String source, Set<String> packages, Set<String> references) {
+        Matcher matcher = QUALIFIED.matcher(source);
+        while (matcher.find()) {
+            String qualified = matcher.group().replaceAll("\\s", "");
+            for (int index = qualified.indexOf('.'); index > 0; index = qualified.indexOf('.', index + 1)) {
+                String candidate = qualified.substring(0, index);
+                if (packages.contains(candidate)) references.add(candidate);
+            }
+            if (packages.contains(qualified)) references.add(qualified);
+        }
+    }
+
+    public List<List<Inputs>> waves(int shards) {
+        List<List<String>> components = new Tarjan(dependencies).components();
+        Map<String, Integer> componentOf = new HashMap<String, Integer>();
+        for (int i = 0; i < components.size(); i++) for (String name : components.get(i)) componentOf.put(name, i);
+
+        int[] levels = new int[components.size()];
+        List<List<List<String>>> waves = new ArrayList<List<List<String>>>();
+        for (int i = 0; i < components.size(); i++) {
+            int level = 0;
+            for (String name : components.get(i)) {
+                for (String dependency : dependencies.get(name)) {
+                    int other = componentOf.get(dependency);
+                    if (other != i) level = Math.max(level, levels[other] + 1);
+                }
+            }
+            levels[i] = level;
+            while (waves.size() <= level) waves.add(new ArrayList<List<String>>());
+            waves.get(level).add(components.get(i));
+        }
+
+        List<List<Inputs>> result = new ArrayList<List<Inputs>>();
+        for (List<List<String>> wave : waves) result.add(balance(wave, shards));
+        return result;
+    }
+
+    private List<Inputs> balance(List<List<String>> components, int shards) {
+        List<List<String>> sorted = new ArrayList<List<String>>(components);
+        Collections.sort(sorted, (a, b) -> size(b) - size(a));
+        List<MemoryStore> bins = new ArrayList<MemoryStore>();
+        for (List<String> component : sorted) {
+            MemoryStore bin = bins.size() < shards ? null : smallest(bins);
+            if (bin == null) bins.add(bin = memoryStore());
+            for (String name : component) Inputs.methods.copy(packages.get(name), bin);
+        }
+        return new ArrayList<Inputs>(bins);
+    }
+
+    private static MemoryStore smallest(List<MemoryStore> bins) {
+        MemoryStore result = bins.get(0);
+        for (MemoryStore bin : bins) if (bin.size() < result.size()) result = bin;
+        return result;
+    }
+
+    private int size(List<String> component) {
+        int size = 0;
+        for (String name : component) size += packages.get(name).size();
+        return size;
+    }
+
+    private static class Tarjan {
+        private final Map<String, Set<String>> graph;
+        private final Map<String, Integer> index = new HashMap<String, Integer>();
+        private final Map<String, Integer> low = new HashMap<String, Integer>();
+        private final List<String> stack = new ArrayList<String>();
+        private final Set<String> onStack = new HashSet<String>();
+        private final List<List<String>> components = new ArrayList<List<String>>();
+
+        private Tarjan(Map<String, Set<String>> graph) {
+            this.graph = graph;
+        }
+
+        private List<List<String>> components() {
+            for (String name : graph.keySet()) if (!index.containsKey(name)) connect(name);
+            return components;
+        }
+
+        private void connect(String name) {
+            index.put(name, index.size());
+            low.put(name, index.get(name));
+            stack.add(name);
+            onStack.add(name);
+            for (String dependency : graph.get(name)) {
+                if (!index.containsKey(dependency)) {
+                    connect(dependency);
+                    low.put(name, Math.min(low.get(name), low.get(dependency)));
+                } else if (onStack.contains(dependency)) {
+                    low.put(name, Math.min(low.get(name), index.get(dependency)));
+                }
+            }
+            if (low.get(name).equals(index.get(name))) {
+                List<String> component = new ArrayList<String>();
+                String member;
+                do {
+                    member = stack.remove(stack.size() - 1);
+                    onStack.remove(member);
+                    component.add(member);
+                } while (!member.equals(name));
+                components.add(component);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.googlecode.jcompilo.snapshot;
+
+import com.googlecode.jcompilo.Digests;
+import com.googlecode.jcompilo.JCompiloException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.RecursiveTask;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class Snapshot {
+    private static final String UNKNOWN = "-";
+    private final File root;
+    private final Map<String, Entry> entries;
+
+    private Snapshot(File root, Map<String, Entry> entries) {
+        this.root = root;
+        this.entries = entries;
+    }
+
+    public static Snapshot snapshot() {
+        return new Snapshot(null, Collections.<String, Entry>emptyMap());
+    }
+
+    public static Snapshot snapshot(File root) {
+        return snapshot(root, snapshot());
+    }
+
+    public static Snapshot snapshot(File root, Snapshot previous) {
+        Map<String, Entry> entries = new TreeMap<String, Entry>();
+        if (root.isDirectory()) {
+            for (Entry entry : new Walk(root.toPath(), "", Collections.<Path>emptySet()).invoke()) {
+                Entry old = previous.entries.get(entry.name);
+                entries.put(entry.name, old != null && old.same(entry) ? old : entry);
+            }
+        }
+        return new Snapshot(root, entries);
+    }
+
+    public static File snapshotFile(File destination) {
+        return new File(destination.getAbsoluteFile().getParentFile(), destination.getName() + ".snapshot");
+    }
+
+    public static Snapshot load(File file) {
+        if (!file.isFile()) return snapshot();
+        Map<String, Entry> entries = new TreeMap<String, Entry>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] parts = line.split("\t", 4);
+                if (parts.length != 4) return snapshot();
+                entries.put(parts[3], new Entry(parts[3], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[0]));
+            }
+        } catch (IOException | RuntimeException e) {
+            return snapshot();
+        }
+        return new Snapshot(null, entries);
+    }
+
+    public void save(File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), UTF_8))) {
+            for (Entry entry : entries.values())
+                writer.write((root == null ? entry.hash : hash(entry)) + "\t" + entry.size + "\t" + entry.modified + "\t" + entry.name + "\n");
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public Set<String> names() {
+        return entries.keySet();
+    }
+
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    public File file(String name) {
+        return new File(root, name);
+    }
+
+    public long size(String name) {
+        return entries.get(name).size;
+    }
+
+    public long modified(String name) {
+        return entries.get(name).modified;
+    }
+
+    public Map<String, Long> modified() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (Entry entry : entries.values()) result.put(entry.name, entry.modified);
+        return result;
+    }
+
+    public Set<String> changed(Snapshot previous) {
+        Set<String> changed = new TreeSet<String>();
+        for (Entry entry : entries.values()) {
+            Entry old = previous.entries.get(entry.name);
+            if (old == null || old.size != entry.size) changed.add(entry.name);
+            else if (old.modified != entry.modified && (UNKNOWN.equals(old.hash) || !old.hash.equals(hash(entry)))) changed.add(entry.name);
+        }
+        for (String name : previous.entries.keySet()) if (!entries.containsKey(name)) changed.add(name);
+        return changed;
+    }
+
+    private String hash(Entry entry) {
+        return entry.hash(file(entry.name));
+    }
+
+    private static class Entry {
+        private final String name;
+        private final long size;
+        private final long modified;
+        private volatile String hash;
+
+        private Entry(String name, long size, long modified, String hash) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        private boolean same(Entry other) {
+            return size == other.size && modified == other.modified;
+        }
+
+        private String hash(File file) {
+            if (!UNKNOWN.equals(hash)) return hash;
+            try {
+                return hash = Digests.sha1(Files.readAllBytes(file.toPath()));
+            } catch (IOException e) {
+                throw new JCompiloException(e);
+            }
+        }
+    }
+
+    private static class Walk extends RecursiveTask<List<Entry>> {
+        private final Path directory;
+        private final String prefix;
+        private final Set<Path> ancestors;
+
+        private Walk(Path directory, String prefix, Set<Path> ancestors) {
+            this.directory = directory;
+            this.prefix = prefix;
+            this.ancestors = ancestors;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            List<Entry> entries = new ArrayList<Entry>();
+            List<Walk> children = new ArrayList<Walk>();
+            Set<Path> chain = new HashSet<Path>(ancestors);
+            try {
+                if (!chain.add(directory.toRealPath())) return entries;
+            } catch (IOException e) {
+                throw new JCompiloException(e);
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    String name = prefix + path.getFileName();
+                    if (attributes.isSymbolicLink()) {
+                        try {
+                            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                        } catch (NoSuchFileException e) {
+                            continue;
+                        }
+                    }
+                    if (attributes.isDirectory()) {
+                        Walk child = new Walk(path, name + "/", chain);
+                        child.fork();
+                        children.add(child);
+                    } else if (attributes.isRegularFile()) {
+                        entries.add(new Entry(name, attributes.size(), attributes.lastModifiedTime().toMillis(), UNKNOWN));
+                    }
+                }
+            } catch (IOException e) {
+                throw new JCompiloException(e);
+            }
+            for (Walk child : children) entries.addAll(child.join());
+            return entries;
+        }
+    }
+}
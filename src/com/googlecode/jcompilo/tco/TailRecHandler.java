@@ -1,47 +1,94 @@
 package com.googlecode.jcompilo.tco;
 
+import com.googlecode.jcompilo.asm.Asm;
 import com.googlecode.jcompilo.asm.AsmMethodHandler;
 import com.googlecode.totallylazy.Sequence;
 import com.googlecode.totallylazy.predicates.LogicalPredicate;
 import jdk.internal.org.objectweb.asm.Opcodes;
 import jdk.internal.org.objectweb.asm.Type;
+import jdk.internal.org.objectweb.asm.tree.AbstractInsnNode;
 import jdk.internal.org.objectweb.asm.tree.ClassNode;
 import jdk.internal.org.objectweb.asm.tree.FrameNode;
+import jdk.internal.org.objectweb.asm.tree.IincInsnNode;
 import jdk.internal.org.objectweb.asm.tree.InsnList;
+import jdk.internal.org.objectweb.asm.tree.InsnNode;
 import jdk.internal.org.objectweb.asm.tree.JumpInsnNode;
 import jdk.internal.org.objectweb.asm.tree.LabelNode;
+import jdk.internal.org.objectweb.asm.tree.LdcInsnNode;
+import jdk.internal.org.objectweb.asm.tree.LineNumberNode;
+import jdk.internal.org.objectweb.asm.tree.LocalVariableNode;
 import jdk.internal.org.objectweb.asm.tree.MethodInsnNode;
 import jdk.internal.org.objectweb.asm.tree.MethodNode;
+import jdk.internal.org.objectweb.asm.tree.TableSwitchInsnNode;
+import jdk.internal.org.objectweb.asm.tree.TryCatchBlockNode;
 import jdk.internal.org.objectweb.asm.tree.VarInsnNode;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.googlecode.jcompilo.asm.Asm.functions.descriptor;
 import static com.googlecode.jcompilo.asm.Asm.functions.name;
 import static com.googlecode.jcompilo.asm.Asm.functions.nextInstruction;
 import static com.googlecode.jcompilo.asm.Asm.functions.opcode;
 import static com.googlecode.jcompilo.asm.Asm.functions.owner;
+import static com.googlecode.jcompilo.asm.Asm.hasAnnotation;
 import static com.googlecode.jcompilo.asm.Asm.initialLocalVariables;
 import static com.googlecode.jcompilo.asm.Asm.instructions;
+import static com.googlecode.jcompilo.asm.Asm.isAbstract;
+import static com.googlecode.jcompilo.asm.Asm.isStatic;
+import static com.googlecode.jcompilo.asm.Asm.load;
 import static com.googlecode.jcompilo.asm.Asm.store;
 import static com.googlecode.totallylazy.predicates.Predicates.and;
 import static com.googlecode.totallylazy.predicates.Predicates.between;
 import static com.googlecode.totallylazy.predicates.Predicates.is;
 import static com.googlecode.totallylazy.predicates.Predicates.where;
 import static com.googlecode.totallylazy.Sequences.one;
-import static com.googlecode.totallylazy.Sequences.sequence;
 import static java.lang.String.format;
+import static jdk.internal.org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static jdk.internal.org.objectweb.asm.Opcodes.ACC_STATIC;
+import static jdk.internal.org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
+import static jdk.internal.org.objectweb.asm.Opcodes.ACONST_NULL;
+import static jdk.internal.org.objectweb.asm.Opcodes.ALOAD;
+import static jdk.internal.org.objectweb.asm.Opcodes.ASTORE;
+import static jdk.internal.org.objectweb.asm.Opcodes.DCONST_0;
+import static jdk.internal.org.objectweb.asm.Opcodes.FCONST_0;
 import static jdk.internal.org.objectweb.asm.Opcodes.GOTO;
+import static jdk.internal.org.objectweb.asm.Opcodes.ICONST_0;
+import static jdk.internal.org.objectweb.asm.Opcodes.ILOAD;
+import static jdk.internal.org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static jdk.internal.org.objectweb.asm.Opcodes.INVOKESTATIC;
 import static jdk.internal.org.objectweb.asm.Opcodes.IRETURN;
+import static jdk.internal.org.objectweb.asm.Opcodes.ISTORE;
+import static jdk.internal.org.objectweb.asm.Opcodes.LCONST_0;
 import static jdk.internal.org.objectweb.asm.Opcodes.RETURN;
 
 public class TailRecHandler implements AsmMethodHandler {
-    private TailRecHandler() {}
+    public static final String SUFFIX = "$tailrec";
+    public static final Type TAILREC = Type.getType("Lcom/googlecode/totallylazy/annotations/tailrec;");
+    private final Type annotation;
+
+    private TailRecHandler(Type annotation) {this.annotation = annotation;}
 
-    public static TailRecHandler tailRecHandler() {return new TailRecHandler();}
+    public static TailRecHandler tailRecHandler() {return tailRecHandler(TAILREC);}
+
+    public static TailRecHandler tailRecHandler(Type annotation) {return new TailRecHandler(annotation);}
 
     @Override
     public Sequence<ClassNode> process(ClassNode classNode, MethodNode methodNode) {
-        if (!tailRecursive(classNode, methodNode))
-            throw new UnsupportedOperationException(format("%s.%s is not tail recursive", classNode.name, methodNode.name));
+        if (merged(classNode, methodNode)) return one(classNode);
+
+        List<MethodNode> group = group(classNode, methodNode);
+        for (MethodNode member : group) {
+            if (!tailRecursive(classNode, member, group))
+                throw new UnsupportedOperationException(format("%s.%s is not tail recursive", classNode.name, member.name));
+        }
+
+        if (group.size() == 1) loop(classNode, methodNode);
+        else dispatch(classNode, group);
+        return one(classNode);
+    }
 
+    private void loop(ClassNode classNode, MethodNode methodNode) {
         insertStartFrame(methodNode);
         InsnList gotoStart = gotoStart(classNode, methodNode);
         for (MethodInsnNode recursiveCall : instructions(methodNode).safeCast(MethodInsnNode.class).filter(sameMethod(classNode, methodNode))) {
@@ -49,7 +96,6 @@ public class TailRecHandler implements AsmMethodHandler {
             methodNode.instructions.insert(recursiveCall, gotoStart);
             methodNode.instructions.remove(recursiveCall); // finally remove recursive call
         }
-        return one(classNode);
     }
 
     private void insertStartFrame(MethodNode methodNode) {
@@ -70,14 +116,250 @@ public class TailRecHandler implements AsmMethodHandler {
         return insnList;
     }
 
-    private boolean tailRecursive(ClassNode classNode, MethodNode method) {
+    // Merges a cycle of mutually tail recursive methods into one synthetic method that
+    // takes a state index plus every member's arguments and dispatches with a tableswitch
+    @SuppressWarnings("unchecked")
+    private void dispatch(ClassNode classNode, List<MethodNode> group) {
+        MethodNode first = group.get(0);
+        boolean isStatic = isStatic(first);
+        int receiver = isStatic ? 0 : 1;
+        int state = receiver;
+        List<Integer> offsets = new ArrayList<Integer>();
+        List<Object> frame = new ArrayList<Object>();
+        if (!isStatic) frame.add(classNode.name);
+        frame.add(Opcodes.INTEGER);
+        StringBuilder desc = new StringBuilder("(I");
+        int parameters = state + 1;
+        for (MethodNode member : group) {
+            offsets.add(parameters);
+            for (Type argument : Asm.argumentTypes(member)) {
+                desc.append(argument.getDescriptor());
+                frame.add(frameType(argument));
+                parameters += argument.getSize();
+            }
+        }
+        desc.append(')').append(Type.getReturnType(first.desc).getDescriptor());
+
+        MethodNode merged = new MethodNode(ACC_PRIVATE | ACC_SYNTHETIC | (isStatic ? ACC_STATIC : 0), first.name + SUFFIX, desc.toString(), null, null);
+        LabelNode loop = new LabelNode();
+        LabelNode[] entries = new LabelNode[group.size()];
+        for (int i = 0; i < entries.length; i++) entries[i] = new LabelNode();
+        merged.instructions.add(loop);
+        merged.instructions.add(fullFrame(frame, new ArrayList<Object>()));
+        merged.instructions.add(new VarInsnNode(ILOAD, state));
+        merged.instructions.add(new TableSwitchInsnNode(0, entries.length - 1, entries[0], entries));
+
+        for (int i = 0; i < group.size(); i++) {
+            MethodNode member = group.get(i);
+            int own = receiver + sizeOf(Asm.argumentTypes(member));
+            int shift = offsets.get(i) - receiver;
+            int locals = parameters - own;
+            expandFrames(classNode, member, frame);
+            for (AbstractInsnNode instruction : instructions(member).toList()) {
+                if (instruction instanceof VarInsnNode) ((VarInsnNode) instruction).var = slot(((VarInsnNode) instruction).var, receiver, own, shift, locals);
+                if (instruction instanceof IincInsnNode) ((IincInsnNode) instruction).var = slot(((IincInsnNode) instruction).var, receiver, own, shift, locals);
+            }
+            for (LocalVariableNode variable : Asm.<LocalVariableNode>seq(member.localVariables)) variable.index = slot(variable.index, receiver, own, shift, locals);
+            for (MethodInsnNode call : instructions(member).safeCast(MethodInsnNode.class).toList()) {
+                int target = indexOf(classNode, group, call);
+                if (target < 0) continue;
+                member.instructions.remove(call.getNext()); // Remove Return
+                member.instructions.insert(call, jump(group.get(target), isStatic, offsets.get(target), target, state, loop));
+                member.instructions.remove(call);
+            }
+
+            merged.instructions.add(entries[i]);
+            if (!startsWithFrame(member)) merged.instructions.add(fullFrame(frame, new ArrayList<Object>()));
+            merged.instructions.add(member.instructions);
+            merged.tryCatchBlocks.addAll(member.tryCatchBlocks);
+            if (member.localVariables != null) merged.localVariables.addAll(member.localVariables);
+        }
+
+        for (int i = 0; i < group.size(); i++) trampoline(classNode, group.get(i), group, isStatic, i, merged);
+        classNode.methods.add(merged);
+    }
+
+    private static int slot(int index, int receiver, int own, int shift, int locals) {
+        if (index < receiver) return index;
+        if (index < own) return index + shift;
+        return index + locals;
+    }
+
+    private InsnList jump(MethodNode target, boolean isStatic, int offset, int index, int state, LabelNode loop) {
+        InsnList insnList = new InsnList();
+        int slot = offset;
+        for (Type argument : Asm.argumentTypes(target)) {
+            insnList.insert(new VarInsnNode(store(argument), slot));
+            slot += argument.getSize();
+        }
+        if (!isStatic) insnList.add(new VarInsnNode(ASTORE, 0));
+        insnList.add(new LdcInsnNode(index));
+        insnList.add(new VarInsnNode(ISTORE, state));
+        insnList.add(new JumpInsnNode(GOTO, loop));
+        return insnList;
+    }
+
+    private void trampoline(ClassNode classNode, MethodNode member, List<MethodNode> group, boolean isStatic, int index, MethodNode merged) {
+        InsnList insnList = new InsnList();
+        if (!isStatic) insnList.add(new VarInsnNode(ALOAD, 0));
+        insnList.add(new LdcInsnNode(index));
+        for (MethodNode other : group) {
+            int slot = isStatic ? 0 : 1;
+            for (Type argument : Asm.argumentTypes(other)) {
+                insnList.add(other == member ? new VarInsnNode(load(argument), slot) : new InsnNode(defaultValue(argument)));
+                slot += argument.getSize();
+            }
+        }
+        insnList.add(new MethodInsnNode(isStatic ? INVOKESTATIC : INVOKESPECIAL, classNode.name, merged.name, merged.desc, false));
+        insnList.add(new InsnNode(Type.getReturnType(member.desc).getOpcode(IRETURN)));
+        member.instructions = insnList;
+        member.tryCatchBlocks = new ArrayList<TryCatchBlockNode>();
+        member.localVariables = new ArrayList<LocalVariableNode>();
+        member.visibleLocalVariableAnnotations = null;
+        member.invisibleLocalVariableAnnotations = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expandFrames(ClassNode classNode, MethodNode member, List<Object> prefix) {
+        List<Object> locals = new ArrayList<Object>();
+        for (Type variable : initialLocalVariables(classNode, member)) locals.add(frameType(variable));
+        int parameters = locals.size();
+        for (FrameNode frame : instructions(member).safeCast(FrameNode.class).toList()) {
+            List<Object> stack = new ArrayList<Object>();
+            switch (frame.type) {
+                case Opcodes.F_NEW:
+                case Opcodes.F_FULL:
+                    locals = new ArrayList<Object>(frame.local);
+                    stack.addAll(frame.stack);
+                    break;
+                case Opcodes.F_APPEND:
+                    locals.addAll(frame.local);
+                    break;
+                case Opcodes.F_CHOP:
+                    locals = new ArrayList<Object>(locals.subList(0, locals.size() - frame.local.size()));
+                    break;
+                case Opcodes.F_SAME1:
+                    stack.addAll(frame.stack);
+                    break;
+            }
+            List<Object> merged = new ArrayList<Object>(prefix);
+            merged.addAll(locals.subList(Math.min(parameters, locals.size()), locals.size()));
+            member.instructions.set(frame, fullFrame(merged, stack));
+        }
+    }
+
+    private static FrameNode fullFrame(List<Object> locals, List<Object> stack) {
+        return new FrameNode(Opcodes.F_FULL, locals.size(), locals.toArray(), stack.size(), stack.toArray());
+    }
+
+    private static boolean startsWithFrame(MethodNode member) {
+        for (AbstractInsnNode instruction : instructions(member)) {
+            if (instruction instanceof LabelNode || instruction instanceof LineNumberNode) continue;
+            return instruction instanceof FrameNode;
+        }
+        return false;
+    }
+
+    private static Object frameType(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+            case Type.CHAR:
+            case Type.BYTE:
+            case Type.SHORT:
+            case Type.INT:
+                return Opcodes.INTEGER;
+            case Type.FLOAT:
+                return Opcodes.FLOAT;
+            case Type.LONG:
+                return Opcodes.LONG;
+            case Type.DOUBLE:
+                return Opcodes.DOUBLE;
+            default:
+                return type.getInternalName();
+        }
+    }
+
+    private static int defaultValue(Type type) {
+        switch (type.getSort()) {
+            case Type.LONG:
+                return LCONST_0;
+            case Type.FLOAT:
+                return FCONST_0;
+            case Type.DOUBLE:
+                return DCONST_0;
+            case Type.OBJECT:
+            case Type.ARRAY:
+                return ACONST_NULL;
+            default:
+                return ICONST_0;
+        }
+    }
+
+    private static int sizeOf(Sequence<Type> types) {
+        int size = 0;
+        for (Type type : types) size += type.getSize();
+        return size;
+    }
+
+    private boolean merged(final ClassNode classNode, MethodNode methodNode) {
+        return instructions(methodNode).safeCast(MethodInsnNode.class).exists(call -> call.owner.equals(classNode.name) && call.name.endsWith(SUFFIX));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<MethodNode> group(ClassNode classNode, MethodNode methodNode) {
+        List<MethodNode> group = new ArrayList<MethodNode>();
+        if (!candidate(classNode, methodNode, methodNode)) group.add(methodNode);
+        else for (MethodNode method : (List<MethodNode>) classNode.methods) {
+            if (method == methodNode || reachable(classNode, methodNode, methodNode).contains(method) && reachable(classNode, method, methodNode).contains(methodNode)) group.add(method);
+        }
+        return group;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<MethodNode> reachable(ClassNode classNode, MethodNode from, MethodNode processing) {
+        List<MethodNode> reached = new ArrayList<MethodNode>();
+        List<MethodNode> pending = new ArrayList<MethodNode>();
+        pending.add(from);
+        while (!pending.isEmpty()) {
+            MethodNode current = pending.remove(pending.size() - 1);
+            for (MethodNode method : (List<MethodNode>) classNode.methods) {
+                if (reached.contains(method) || !candidate(classNode, method, processing) || !tailCalls(classNode, current, method)) continue;
+                reached.add(method);
+                pending.add(method);
+            }
+        }
+        return reached;
+    }
+
+    // The annotation has already been stripped from the method being processed
+    private boolean candidate(ClassNode classNode, MethodNode method, MethodNode processing) {
+        return (method == processing || hasAnnotation(method, annotation)) && !isAbstract(method) &&
+                (isStatic(method) || (method.access & ACC_PRIVATE) != 0) && !merged(classNode, method);
+    }
+
+    private boolean tailCalls(ClassNode classNode, MethodNode from, MethodNode to) {
+        if (isStatic(from) != isStatic(to) || !Type.getReturnType(from.desc).equals(Type.getReturnType(to.desc))) return false;
+        return instructions(from).safeCast(MethodInsnNode.class).filter(sameMethod(classNode, to)).
+                exists(call -> call.getOpcode() == (isStatic(to) ? INVOKESTATIC : INVOKESPECIAL) && tailCall(call));
+    }
+
+    private int indexOf(ClassNode classNode, List<MethodNode> group, MethodInsnNode call) {
+        for (int i = 0; i < group.size(); i++) if (sameMethod(classNode, group.get(i)).matches(call)) return i;
+        return -1;
+    }
+
+    private boolean tailRecursive(ClassNode classNode, MethodNode method, List<MethodNode> group) {
         Sequence<MethodInsnNode> recursiveCalls = instructions(method).safeCast(MethodInsnNode.class).
-                filter(sameMethod(classNode, method));
-        return !recursiveCalls.isEmpty() && recursiveCalls.map(nextInstruction).forAll(where(opcode, between(IRETURN, RETURN)));
+                filter(call -> indexOf(classNode, group, call) >= 0);
+        return (group.size() > 1 || !recursiveCalls.isEmpty()) && recursiveCalls.map(nextInstruction).forAll(where(opcode, between(IRETURN, RETURN)));
+    }
+
+    private static boolean tailCall(MethodInsnNode call) {
+        return call.getNext() != null && call.getNext().getOpcode() >= IRETURN && call.getNext().getOpcode() <= RETURN;
     }
 
     private LogicalPredicate<MethodInsnNode> sameMethod(ClassNode classNode, MethodNode method) {
-        return and(where(owner, is(classNode.name)), where(name, is(method.name)));
+        return and(where(owner, is(classNode.name)), where(name, is(method.name)), where(descriptor, is(method.desc)));
     }
 
 }
@@ -0,0 +1,44 @@
+package com.googlecode.jcompilo.tests;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+class TestClassLoader extends URLClassLoader {
+    private static final String[] SHARED = {"java.", "org.junit.", "junit.", "org.hamcrest."};
+
+    TestClassLoader(URL[] urls, ClassLoader parent) {
+        super(urls, parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (shared(name)) return super.loadClass(name, resolve);
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> result = findLoadedClass(name);
+            if (result == null) {
+                try {
+                    result = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    result = getParent().loadClass(name);
+                }
+            }
+            if (resolve) resolveClass(result);
+            return result;
+        }
+    }
+
+    @Override
+    public URL getResource(String name) {
+        URL resource = findResource(name);
+        return resource == null ? super.getResource(name) : resource;
+    }
+
+    private static boolean shared(String name) {
+        for (String prefix : SHARED) if (name.startsWith(prefix)) return true;
+        return false;
+    }
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+}
@@ -5,16 +5,28 @@ import com.googlecode.jcompilo.Inputs;
 import com.googlecode.jcompilo.Outputs;
 import com.googlecode.jcompilo.Processes;
 import com.googlecode.jcompilo.Processor;
+import com.googlecode.jcompilo.Trace;
+import com.googlecode.jcompilo.tests.junit.TestExecutor;
+import com.googlecode.jcompilo.zip.CentralDirectory;
 import com.googlecode.totallylazy.predicates.Predicate;
 import com.googlecode.totallylazy.Sequence;
 import com.googlecode.totallylazy.Streams;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static com.googlecode.jcompilo.BootStrap.jarFile;
 import static com.googlecode.jcompilo.Compiler.CPUS;
+import static com.googlecode.jcompilo.zip.CentralDirectory.centralDirectory;
 import static com.googlecode.totallylazy.Sequences.cons;
 import static com.googlecode.totallylazy.Sequences.empty;
 import static com.googlecode.totallylazy.Sequences.sequence;
@@ -57,6 +69,11 @@ public class Tests implements Processor {
         return true;
     }
 
+    @Override
+    public Set<String> extensions() {
+        return Collections.singleton(".java");
+    }
+
     @Override
     public boolean matches(String other) {
         boolean matched = predicate.matches(other);
@@ -65,6 +82,7 @@ public class Tests implements Processor {
     }
 
     public boolean execute(File testJar) throws Exception {
+        addCompiledTests(testJar);
         if(!tests.isEmpty()) {
             try {
                 environment.out().prefix("    [junit] ");
@@ -72,8 +90,15 @@ public class Tests implements Processor {
                 List<String> arguments = cons(javaProcess(), debug().join(sequence("-cp", dependencies.cons(testJar).cons(jarFile(getClass())).toString(pathSeparator),
                         "com.googlecode.jcompilo.tests.junit.TestExecutor", String.valueOf(numberOfThreads), reportsDirectory.toString()))).toList();
                 arguments.addAll(sequence(tests).toList());
-                Process process = Processes.execute(arguments, environment.workingDirectory());
-                int exitCode = process.waitFor();
+                long start = System.nanoTime();
+                int exitCode;
+                Process process;
+                try (Trace.Span ignored = environment.trace().span("test", String.format("junit jvm %s classes", tests.size()))) {
+                    process = Processes.execute(arguments, environment.workingDirectory());
+                    exitCode = process.waitFor();
+                }
+                environment.metrics().increment("test_classes", tests.size());
+                environment.metrics().record("test_run_milliseconds", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
                 if (exitCode != 0) {
                     Streams.copy(process.getInputStream(), environment.out());
                     return false;
@@ -85,6 +110,40 @@ public class Tests implements Processor {
         return true;
     }
 
+    public boolean execute(File testJar, Iterable<String> sources) throws Exception {
+        List<String> selected = new ArrayList<String>();
+        for (String source : sources) if (predicate.matches(source)) selected.add(source);
+        if (selected.isEmpty()) return true;
+        List<URL> urls = new ArrayList<URL>();
+        for (File file : dependencies.cons(testJar)) urls.add(file.toURI().toURL());
+        environment.out().prefix("    [junit] ");
+        try (URLClassLoader classLoader = new TestClassLoader(urls.toArray(new URL[urls.size()]), getClass().getClassLoader())) {
+            environment.out().printf("Running %s affected tests classes in process%n", selected.size());
+            Result result;
+            try (Trace.Span ignored = environment.trace().span("test", String.format("junit %s classes", selected.size()))) {
+                result = TestExecutor.execute(TestExecutor.asClasses(selected, classLoader), numberOfThreads, reportsDirectory);
+            }
+            for (Failure failure : result.getFailures()) environment.out().printf("%s %s%n", failure.getTestHeader(), failure.getMessage());
+            environment.out().printf("%s run, %s failed in %sms%n", result.getRunCount(), result.getFailureCount(), result.getRunTime());
+            environment.metrics().increment("test_classes", selected.size());
+            environment.metrics().record("test_run_milliseconds", result.getRunTime());
+            return result.wasSuccessful();
+        } finally {
+            environment.out().clearPrefix();
+        }
+    }
+
+    private void addCompiledTests(File testJar) throws IOException {
+        if (!testJar.isFile()) return;
+        try (CentralDirectory directory = centralDirectory(testJar)) {
+            for (String name : directory.entries().keySet()) {
+                if (!name.endsWith(".class") || name.contains("$")) continue;
+                String source = name.replaceFirst("\\.class$", ".java");
+                if (predicate.matches(source) && !tests.contains(source)) tests.add(source);
+            }
+        }
+    }
+
     private String javaProcess() {
         return environment.properties().getProperty("java.home") + "/bin/java";
     }
@@ -81,9 +81,13 @@ public class TestExecutor {
     }
 
     public static Class<?>[] asClasses(List<String> fileNames) throws ClassNotFoundException {
+        return asClasses(fileNames, TestExecutor.class.getClassLoader());
+    }
+
+    public static Class<?>[] asClasses(List<String> fileNames, ClassLoader classLoader) throws ClassNotFoundException {
         Class<?>[] result = new Class<?>[fileNames.size()];
         for (int i = 0; i < fileNames.size(); i++) {
-            result[i] = Class.forName(className(fileNames.get(i)));
+            result[i] = Class.forName(className(fileNames.get(i)), true, classLoader);
         }
         return result;
     }
@@ -24,7 +24,7 @@ public class Dsl {
 
     public static Unary<JCompiler> tailrec(final String className) {
         return compiler -> new JCompiler(compiler.compiler(),
-                compiler.resourceHandlers().append(asmResourceHandler().add(typeFor(className), tailRecHandler())));
+                compiler.resourceHandlers().append(asmResourceHandler().add(typeFor(className), tailRecHandler(typeFor(className)))));
     }
 
 }
@@ -6,11 +6,14 @@ import com.googlecode.totallylazy.collections.PersistentList;
 import com.googlecode.totallylazy.reflection.Constructors;
 import com.googlecode.totallylazy.reflection.Reflection;
 
+import javax.annotation.processing.Processor;
 import javax.tools.*;
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import static com.googlecode.totallylazy.Sequences.one;
 import static com.googlecode.totallylazy.Sequences.sequence;
@@ -34,6 +37,7 @@ public class JCompiler extends ForwardingJavaCompiler<JavaCompiler> {
     }
 
     private final PersistentList<ResourceHandler> resourceHandlers;
+    private final Map<StandardJavaFileManager, PostProcessor> postProcessors = new WeakHashMap<StandardJavaFileManager, PostProcessor>();
 
     public JCompiler(JavaCompiler javaCompiler, PersistentList<ResourceHandler> resourceHandlers) {
         super(javaCompiler);
@@ -42,12 +46,28 @@ public class JCompiler extends ForwardingJavaCompiler<JavaCompiler> {
 
     @Override
     public CompilationTask getTask(Writer out, JavaFileManager fileManager, DiagnosticListener<? super JavaFileObject> diagnosticListener, Iterable<String> options, Iterable<String> classes, Iterable<? extends JavaFileObject> compilationUnits) {
-        return super.getTask(out, ensurePostProcessingPossible((StandardJavaFileManager) fileManager, diagnosticListener), diagnosticListener, options, classes, compilationUnits);
+        final PostProcessor postProcessing = ensurePostProcessingPossible((StandardJavaFileManager) fileManager, diagnosticListener).forTask();
+        final CompilationTask task = super.getTask(out, postProcessing, diagnosticListener, options, classes, compilationUnits);
+        return new PostProcessingTask(task, postProcessing);
     }
 
-    private StandardJavaFileManager ensurePostProcessingPossible(StandardJavaFileManager original, DiagnosticListener<? super JavaFileObject> diagnosticListener) {
-        if(original instanceof PostProcessor) return original;
-        StandardJavaFileManager newFileManager = getStandardFileManager(diagnosticListener, Locale.getDefault(), Charset.forName("UTF-8"));
+    private static void awaitPostProcessing(PostProcessor postProcessor) {
+        try {
+            postProcessor.await();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private PostProcessor ensurePostProcessingPossible(StandardJavaFileManager original, DiagnosticListener<? super JavaFileObject> diagnosticListener) {
+        if(original instanceof PostProcessor) return (PostProcessor) original;
+        synchronized (postProcessors) {
+            return postProcessors.computeIfAbsent(original, fileManager -> postProcessor(fileManager, diagnosticListener));
+        }
+    }
+
+    private PostProcessor postProcessor(StandardJavaFileManager original, DiagnosticListener<? super JavaFileObject> diagnosticListener) {
+        PostProcessor newFileManager = getStandardFileManager(diagnosticListener, Locale.getDefault(), Charset.forName("UTF-8"));
         for (StandardLocation location : StandardLocation.values()) {
             try {
                 newFileManager.setLocation(location, original.getLocation(location));
@@ -59,7 +79,7 @@ public class JCompiler extends ForwardingJavaCompiler<JavaCompiler> {
     }
 
     @Override
-    public StandardJavaFileManager getStandardFileManager(DiagnosticListener<? super JavaFileObject> diagnosticListener, Locale locale, Charset charset) {
+    public PostProcessor getStandardFileManager(DiagnosticListener<? super JavaFileObject> diagnosticListener, Locale locale, Charset charset) {
         return new PostProcessor(compiler.getStandardFileManager(diagnosticListener, locale, charset), resourceHandlers);
     }
 
@@ -71,4 +91,39 @@ public class JCompiler extends ForwardingJavaCompiler<JavaCompiler> {
         return compiler;
     }
 
+    public static class PostProcessingTask implements CompilationTask {
+        private final CompilationTask task;
+        private final PostProcessor postProcessor;
+
+        private PostProcessingTask(CompilationTask task, PostProcessor postProcessor) {
+            this.task = task;
+            this.postProcessor = postProcessor;
+        }
+
+        public CompilationTask task() {
+            return task;
+        }
+
+        @Override
+        public void setProcessors(Iterable<? extends Processor> processors) {
+            task.setProcessors(processors);
+        }
+
+        @Override
+        public void setLocale(Locale locale) {
+            task.setLocale(locale);
+        }
+
+        @Override
+        public Boolean call() {
+            boolean success;
+            try {
+                success = task.call();
+            } finally {
+                awaitPostProcessing(postProcessor);
+            }
+            return success;
+        }
+    }
+
 }
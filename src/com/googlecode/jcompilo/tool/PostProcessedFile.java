@@ -21,11 +21,13 @@ import static javax.tools.JavaFileObject.Kind.CLASS;
 import static javax.tools.StandardLocation.CLASS_OUTPUT;
 
 public class PostProcessedFile extends ForwardingJavaFileObject<JavaFileObject> {
+    private final PostProcessor postProcessor;
     private final StandardJavaFileManager fileManager;
     private final Iterable<ResourceHandler> resourceHandlers;
 
-    public PostProcessedFile(StandardJavaFileManager fileManager, Iterable<ResourceHandler> resourceHandlers, JavaFileObject fileForOutput) throws IOException {
+    public PostProcessedFile(PostProcessor postProcessor, StandardJavaFileManager fileManager, Iterable<ResourceHandler> resourceHandlers, JavaFileObject fileForOutput) throws IOException {
         super(fileForOutput);
+        this.postProcessor = postProcessor;
         this.fileManager = fileManager;
         this.resourceHandlers = resourceHandlers;
     }
@@ -35,13 +37,16 @@ public class PostProcessedFile extends ForwardingJavaFileObject<JavaFileObject>
         return new ByteArrayOutputStream() {
             @Override
             public void close() throws IOException {
-                Resource original = resource(uri(fileObject.toUri()), getName(), new Date(fileObject.getLastModified()), toByteArray());
-
-                for (Resource generated : sequence(resourceHandlers).flatMap(matchAndHandle(original))) {
-                    try (OutputStream outputStream = fileManager.getJavaFileForOutput(CLASS_OUTPUT, MoveToTL.classNameForByteCode(generated.name()), CLASS, fileObject).openOutputStream()) {
-                        outputStream.write(generated.bytes());
+                final Resource original = resource(uri(fileObject.toUri()), getName(), new Date(fileObject.getLastModified()), toByteArray());
+                postProcessor.submit(() -> {
+                    for (Resource generated : sequence(resourceHandlers).flatMap(matchAndHandle(original)).realise()) {
+                        JavaFileObject output = postProcessor.output(CLASS_OUTPUT, MoveToTL.classNameForByteCode(generated.name()), CLASS, fileObject);
+                        try (OutputStream outputStream = output.openOutputStream()) {
+                            outputStream.write(generated.bytes());
+                        }
                     }
-                }
+                    return null;
+                });
             }
         };
     }
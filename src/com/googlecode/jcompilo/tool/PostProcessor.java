@@ -1,5 +1,6 @@
 package com.googlecode.jcompilo.tool;
 
+import com.googlecode.jcompilo.BuildExecutor;
 import com.googlecode.jcompilo.ResourceHandler;
 import com.googlecode.totallylazy.functions.Unary;
 
@@ -8,11 +9,21 @@ import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
 import java.io.File;
 import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import static com.googlecode.jcompilo.BuildExecutor.POST_PROCESS;
+import static com.googlecode.jcompilo.BuildExecutor.buildExecutor;
+import static com.googlecode.jcompilo.BuildExecutor.threads;
 import static com.googlecode.totallylazy.Sequences.sequence;
 
 public class PostProcessor extends ForwardingStandardJavaFileManager<StandardJavaFileManager> {
     private final Iterable<ResourceHandler> resourceHandlers;
+    private final BuildExecutor executor = buildExecutor(POST_PROCESS, threads(System.getProperties()));
+    private final Queue<Future<?>> pending = new ConcurrentLinkedQueue<Future<?>>();
 
     public PostProcessor(StandardJavaFileManager fileManager, Iterable<ResourceHandler> resourceHandlers) {
         super(fileManager);
@@ -26,7 +37,19 @@ public class PostProcessor extends ForwardingStandardJavaFileManager<StandardJav
 
     @Override
     public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) throws IOException {
-        return postProcessFile.apply(fileManager.getJavaFileForOutput(location, className, kind, sibling));
+        return postProcessFile.apply(output(location, className, kind, sibling));
+    }
+
+    // javac asks for outputs on its own thread while post-processing asks from the pool, and every
+    // PostProcessor over the same file manager must agree on the lock, so it is the file manager itself
+    JavaFileObject output(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+        synchronized (fileManager) {
+            return fileManager.getJavaFileForOutput(location, className, kind, sibling);
+        }
+    }
+
+    PostProcessor forTask() {
+        return new PostProcessor(fileManager, resourceHandlers);
     }
 
     @Override
@@ -49,10 +72,29 @@ public class PostProcessor extends ForwardingStandardJavaFileManager<StandardJav
         return sequence(fileManager.getJavaFileObjects(names)).map(postProcessFile);
     }
 
+    void submit(Callable<?> task) {
+        pending.add(executor.submit(task));
+    }
+
+    public void await() throws IOException {
+        IOException failure = null;
+        for (Future<?> future = pending.poll(); future != null; future = pending.poll()) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                if (failure == null) failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
     private Unary<JavaFileObject> postProcessFile = new Unary<JavaFileObject>() {
         @Override
         public JavaFileObject call(JavaFileObject raw) throws Exception {
-            return new PostProcessedFile(fileManager, resourceHandlers, raw);
+            return new PostProcessedFile(PostProcessor.this, fileManager, resourceHandlers, raw);
         }
     };
 
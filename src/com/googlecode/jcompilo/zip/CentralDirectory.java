@@ -0,0 +1,130 @@
+package com.googlecode.jcompilo.zip;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+public class CentralDirectory implements Closeable {
+    static final int LOCAL = 0x04034b50;
+    static final int CENTRAL = 0x02014b50;
+    static final int END = 0x06054b50;
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+    private static final int END_SIZE = 22;
+    private final RandomAccessFile file;
+    private final Map<String, ZipEntryRecord> entries;
+
+    private CentralDirectory(RandomAccessFile file, Map<String, ZipEntryRecord> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    public static CentralDirectory centralDirectory(File zip) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(zip, "r");
+        try {
+            return new CentralDirectory(file, read(file));
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public Map<String, ZipEntryRecord> entries() {
+        return entries;
+    }
+
+    public byte[] raw(ZipEntryRecord entry) throws IOException {
+        ByteBuffer header = read(file, entry.offset, 30);
+        if (header.getInt(0) != LOCAL) throw new ZipException("Invalid local header for " + entry.name);
+        long data = entry.offset + 30 + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+        byte[] result = new byte[(int) entry.compressedSize];
+        synchronized (file) {
+            file.seek(data);
+            file.readFully(result);
+        }
+        return result;
+    }
+
+    public byte[] bytes(ZipEntryRecord entry) throws IOException {
+        byte[] raw = raw(entry);
+        if (entry.method == STORED) return raw;
+        if (entry.method != DEFLATED) throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(raw);
+            byte[] result = new byte[(int) entry.size];
+            int read = 0;
+            while (read < result.length && !inflater.finished()) {
+                int count = inflater.inflate(result, read, result.length - read);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                read += count;
+            }
+            if (read != result.length) throw new ZipException("Truncated entry " + entry.name);
+            return result;
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private static Map<String, ZipEntryRecord> read(RandomAccessFile file) throws IOException {
+        long length = file.length();
+        int tail = (int) Math.min(length, END_SIZE + 0xffff);
+        ByteBuffer buffer = read(file, length - tail, tail);
+        int end = tail - END_SIZE;
+        while (end >= 0 && buffer.getInt(end) != END) end--;
+        if (end < 0) throw new ZipException("No end of central directory found");
+
+        int count = buffer.getShort(end + 10) & 0xffff;
+        long size = buffer.getInt(end + 12) & 0xffffffffL;
+        long offset = buffer.getInt(end + 16) & 0xffffffffL;
+        if (count == 0xffff || offset == 0xffffffffL) throw new ZipException("Zip64 archives are not supported");
+
+        ByteBuffer directory = read(file, offset, (int) size);
+        Map<String, ZipEntryRecord> entries = new LinkedHashMap<String, ZipEntryRecord>();
+        for (int position = 0, i = 0; i < count; i++) {
+            if (directory.getInt(position) != CENTRAL) throw new ZipException("Invalid central directory entry");
+            int nameLength = directory.getShort(position + 28) & 0xffff;
+            int extraLength = directory.getShort(position + 30) & 0xffff;
+            int commentLength = directory.getShort(position + 32) & 0xffff;
+            byte[] name = new byte[nameLength];
+            directory.position(position + 46);
+            directory.get(name);
+            ZipEntryRecord entry = new ZipEntryRecord(new String(name, StandardCharsets.UTF_8),
+                    directory.getShort(position + 10) & 0xffff,
+                    directory.getInt(position + 12),
+                    directory.getInt(position + 16) & 0xffffffffL,
+                    directory.getInt(position + 20) & 0xffffffffL,
+                    directory.getInt(position + 24) & 0xffffffffL,
+                    directory.getInt(position + 42) & 0xffffffffL);
+            entries.put(entry.name, entry);
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return Collections.unmodifiableMap(entries);
+    }
+
+    private static ByteBuffer read(RandomAccessFile file, long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        synchronized (file) {
+            file.seek(position);
+            file.readFully(bytes);
+        }
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,26 @@
+package com.googlecode.jcompilo.zip;
+
+public class ZipEntryRecord {
+    public final String name;
+    public final int method;
+    public final int time;
+    public final long crc;
+    public final long compressedSize;
+    public final long size;
+    public final long offset;
+
+    ZipEntryRecord(String name, int method, int time, long crc, long compressedSize, long size, long offset) {
+        this.name = name;
+        this.method = method;
+        this.time = time;
+        this.crc = crc;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.offset = offset;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
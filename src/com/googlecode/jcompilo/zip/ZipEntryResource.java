@@ -0,0 +1,59 @@
+package com.googlecode.jcompilo.zip;
+
+import com.googlecode.jcompilo.JCompiloException;
+import com.googlecode.jcompilo.Resource;
+import com.googlecode.totallylazy.io.Uri;
+
+import java.io.IOException;
+import java.util.Calendar;
+
+public class ZipEntryResource implements Resource {
+    private final CentralDirectory directory;
+    private final ZipEntryRecord entry;
+
+    private ZipEntryResource(CentralDirectory directory, ZipEntryRecord entry) {
+        this.directory = directory;
+        this.entry = entry;
+    }
+
+    public static ZipEntryResource zipEntryResource(CentralDirectory directory, ZipEntryRecord entry) {
+        return new ZipEntryResource(directory, entry);
+    }
+
+    @Override
+    public Uri uri() {
+        return Uri.uri(entry.name);
+    }
+
+    @Override
+    public String name() {
+        return entry.name;
+    }
+
+    @Override
+    public long lastModified() {
+        return javaTime(entry.time);
+    }
+
+    @Override
+    public byte[] bytes() {
+        try {
+            return directory.bytes(entry);
+        } catch (IOException e) {
+            throw new JCompiloException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s)", entry.name, directory);
+    }
+
+    static long javaTime(int dosTime) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(((dosTime >> 25) & 0x7f) + 1980, ((dosTime >> 21) & 0x0f) - 1, (dosTime >> 16) & 0x1f,
+                (dosTime >> 11) & 0x1f, (dosTime >> 5) & 0x3f, (dosTime << 1) & 0x3e);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,328 @@
+package com.googlecode.jcompilo.zip;
+
+import com.googlecode.jcompilo.BuildExecutor;
+import com.googlecode.jcompilo.ByteBufferDestination;
+import com.googlecode.jcompilo.Environment;
+import com.googlecode.jcompilo.OutputBuffer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import static com.googlecode.jcompilo.BuildExecutor.DEFAULT_BUFFER;
+import static com.googlecode.jcompilo.BuildExecutor.bufferBytes;
+import static com.googlecode.jcompilo.BuildExecutor.buildExecutor;
+import static com.googlecode.jcompilo.Resource.constructors.resource;
+
+import static com.googlecode.jcompilo.zip.CentralDirectory.CENTRAL;
+import static com.googlecode.jcompilo.zip.CentralDirectory.DEFLATED;
+import static com.googlecode.jcompilo.zip.CentralDirectory.END;
+import static com.googlecode.jcompilo.zip.CentralDirectory.LOCAL;
+import static com.googlecode.jcompilo.zip.CentralDirectory.STORED;
+
+public class ZipWriter implements ByteBufferDestination {
+    private static final int VERSION = 20;
+    private static final int UTF8 = 0x800;
+    private static final long LIMIT = 0xffffffffL;
+    private static final int ENTRIES = 0xffff;
+    private static final Comparator<String> ORDER = (a, b) -> {
+        int rank = Integer.compare(rank(a), rank(b));
+        return rank != 0 ? rank : a.compareTo(b);
+    };
+    private static final Set<String> COMPRESSED = new HashSet<String>(Arrays.asList(
+            "png", "jpg", "jpeg", "gif", "ico", "woff", "woff2", "jar", "war", "ear", "zip", "gz", "tgz", "bz2", "xz", "7z"));
+    private final OutputStream output;
+    private final int level;
+    private final Map<String, Pending> pending = new ConcurrentSkipListMap<String, Pending>(ORDER);
+    private final List<ZipEntryRecord> written = new ArrayList<ZipEntryRecord>();
+    private final long memory;
+    private final AtomicLong held = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private FileChannel spill;
+    private long position;
+
+    private ZipWriter(OutputStream output, int level, long memory) {
+        this.output = new BufferedOutputStream(output);
+        this.level = level;
+        this.memory = memory;
+    }
+
+    public static ZipWriter zipWriter(OutputStream output) throws IOException {
+        return zipWriter(output, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public static ZipWriter zipWriter(OutputStream output, int level) throws IOException {
+        return zipWriter(output, level, DEFAULT_BUFFER * 1024 * 1024);
+    }
+
+    public static ZipWriter zipWriter(OutputStream output, int level, long memory) throws IOException {
+        return new ZipWriter(output, level, memory);
+    }
+
+    public static int level(Environment env) {
+        return Integer.parseInt(env.properties().getProperty("jcompilo.zip.level", String.valueOf(Deflater.DEFAULT_COMPRESSION)));
+    }
+
+    public static int level(Environment env, File destination) {
+        String level = env.properties().getProperty("jcompilo.zip.level." + destination.getName());
+        return level == null ? level(env) : Integer.parseInt(level);
+    }
+
+    public static int zip(Environment env, File source, File destination) throws IOException {
+        List<File> files = new ArrayList<File>();
+        try (Stream<Path> paths = Files.walk(source.toPath())) {
+            paths.filter(Files::isRegularFile).sorted().forEach(path -> files.add(path.toFile()));
+        }
+        try (ZipWriter writer = zipWriter(new FileOutputStream(destination), level(env, destination), bufferBytes(env))) {
+            try (BuildExecutor.Batch batch = buildExecutor(env).batch(bufferBytes(env))) {
+                for (final File file : files) {
+                    final String name = source.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+                    batch.execute(file.length(), () -> {
+                        writer.write(name, new Date(file.lastModified()), resource(file, name).buffer());
+                        return null;
+                    });
+                }
+            }
+        }
+        return files.size();
+    }
+
+    @Override
+    public OutputStream destination(final String name, final Date modified) throws IOException {
+        return new OutputBuffer() {
+            @Override
+            public void close() throws IOException {
+                ZipWriter.this.write(name, modified, buffer());
+            }
+        };
+    }
+
+    @Override
+    public void write(String name, Date modified, ByteBuffer buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        int size = buffer.remaining();
+        int time = dosTime(modified.getTime());
+        if (level == Deflater.NO_COMPRESSION || compressed(name)) {
+            hold(new ZipEntryRecord(name, STORED, time, crc.getValue(), size, size, 0), buffer.duplicate());
+            return;
+        }
+        byte[] compressed = deflate(buffer, level);
+        raw(new ZipEntryRecord(name, DEFLATED, time, crc.getValue(), compressed.length, size, 0), compressed);
+    }
+
+    static boolean compressed(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED.contains(name.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    public void raw(ZipEntryRecord entry, byte[] compressed) throws IOException {
+        hold(entry, ByteBuffer.wrap(compressed));
+    }
+
+    static int rank(String name) {
+        if (name.equals("META-INF/")) return 0;
+        if (name.equalsIgnoreCase("META-INF/MANIFEST.MF")) return 1;
+        return 2;
+    }
+
+    private void hold(ZipEntryRecord entry, ByteBuffer data) throws IOException {
+        if (pending.containsKey(entry.name)) throw duplicate(entry.name);
+        int length = data.remaining();
+        Pending value = held.addAndGet(length) <= memory ? new Pending(entry, data, 0, length) : spill(entry, data);
+        if (pending.putIfAbsent(entry.name, value) != null) throw duplicate(entry.name);
+    }
+
+    private Pending spill(ZipEntryRecord entry, ByteBuffer data) throws IOException {
+        held.addAndGet(-data.remaining());
+        FileChannel spill = spill();
+        int length = data.remaining();
+        long offset = spilled.getAndAdd(length);
+        for (long at = offset; data.hasRemaining(); ) at += spill.write(data, at);
+        return new Pending(entry, null, offset, length);
+    }
+
+    private synchronized FileChannel spill() throws IOException {
+        if (spill == null) {
+            Path file = Files.createTempFile("jcompilo", ".zip.spill");
+            spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        return spill;
+    }
+
+    private static ZipException duplicate(String name) {
+        return new ZipException("duplicate entry: " + name);
+    }
+
+    private void append(Pending pending) throws IOException {
+        ZipEntryRecord entry = pending.record;
+        int length = pending.length;
+        if (position > LIMIT || entry.size > LIMIT)
+            throw new IOException(String.format("Writing %s needs Zip64, which is not supported", entry.name));
+        ZipEntryRecord record = new ZipEntryRecord(entry.name, entry.method, entry.time, entry.crc, length, entry.size, position);
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        writeInt(LOCAL);
+        writeShort(VERSION);
+        writeShort(UTF8);
+        writeShort(record.method);
+        writeInt(record.time);
+        writeInt(record.crc);
+        writeInt(record.compressedSize);
+        writeInt(record.size);
+        writeShort(name.length);
+        writeShort(0);
+        writeBytes(name);
+        if (pending.data != null) ByteBufferDestination.methods.write(pending.data.duplicate(), output);
+        else copy(entry.name, pending.offset, length);
+        position += length;
+        written.add(record);
+    }
+
+    private void copy(String name, long offset, int length) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(Math.min(Math.max(length, 1), 64 * 1024));
+        for (long at = offset, end = offset + length; at < end; ) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), end - at));
+            int read = spill.read(chunk, at);
+            if (read < 0) throw new IOException("Spilled zip data is truncated for " + name);
+            at += read;
+            chunk.flip();
+            ByteBufferDestination.methods.write(chunk, output);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            pending.clear();
+            if (spill != null) spill.close();
+            output.close();
+        }
+    }
+
+    private void finish() throws IOException {
+        if (pending.size() > ENTRIES) throw new IOException(String.format("Writing %s entries needs Zip64, which is not supported", pending.size()));
+        for (Pending entry : pending.values()) append(entry);
+        long start = position;
+        for (ZipEntryRecord entry : written) {
+            byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+            writeInt(CENTRAL);
+            writeShort(VERSION);
+            writeShort(VERSION);
+            writeShort(UTF8);
+            writeShort(entry.method);
+            writeInt(entry.time);
+            writeInt(entry.crc);
+            writeInt(entry.compressedSize);
+            writeInt(entry.size);
+            writeShort(name.length);
+            writeShort(0);
+            writeShort(0);
+            writeShort(0);
+            writeShort(0);
+            writeInt(0);
+            writeInt(entry.offset);
+            writeBytes(name);
+        }
+        long size = position - start;
+        if (start > LIMIT || size > LIMIT) throw new IOException("Writing a central directory beyond 4GB needs Zip64, which is not supported");
+        writeInt(END);
+        writeShort(0);
+        writeShort(0);
+        writeShort(written.size());
+        writeShort(written.size());
+        writeInt(size);
+        writeInt(start);
+        writeShort(0);
+    }
+
+    private static byte[] deflate(ByteBuffer buffer, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (buffer.hasArray()) {
+                deflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.duplicate().get(bytes);
+                deflater.setInput(bytes);
+            }
+            deflater.finish();
+            ByteArrayOutputStream result = new ByteArrayOutputStream(Math.max(64, buffer.remaining() / 2));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) result.write(chunk, 0, deflater.deflate(chunk));
+            return result.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static int dosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) return (1 << 21) | (1 << 16);
+        return (year - 1980) << 25 |
+                (calendar.get(Calendar.MONTH) + 1) << 21 |
+                calendar.get(Calendar.DAY_OF_MONTH) << 16 |
+                calendar.get(Calendar.HOUR_OF_DAY) << 11 |
+                calendar.get(Calendar.MINUTE) << 5 |
+                calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private void writeShort(int value) throws IOException {
+        output.write(value & 0xff);
+        output.write((value >>> 8) & 0xff);
+        position += 2;
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xffff));
+        writeShort((int) ((value >>> 16) & 0xffff));
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        output.write(bytes);
+        position += bytes.length;
+    }
+
+    private static class Pending {
+        private final ZipEntryRecord record;
+        private final ByteBuffer data;
+        private final long offset;
+        private final int length;
+
+        private Pending(ZipEntryRecord record, ByteBuffer data, long offset, int length) {
+            this.record = record;
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
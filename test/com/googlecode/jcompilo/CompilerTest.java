@@ -10,6 +10,7 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.util.Properties;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -60,6 +61,103 @@ public class CompilerTest {
         compiler.compile(input, output);
     }
 
+    @Test
+    public void removesOrphanedClassesAndRecompilesDependantsWhenCompilingToADirectory() throws Exception {
+        File input = directory(jcompilo, "src");
+        File output = directory(jcompilo, "compiled");
+        write(file(input, "com/example/Greeting.java"), "package com.example; public class Greeting { public static String text() { return \"Hello\"; } }");
+        write(file(input, "com/example/Greeter.java"), "package com.example; public class Greeter { public String greet() { return Greeting.text(); } }");
+        write(file(input, "com/example/Unused.java"), "package com.example; public class Unused { }");
+        assertThat(compiler.compile(input, output), is(true));
+        assertThat(dirContains(output, "com/example/Unused.class"), is(true));
+
+        file(input, "com/example/Unused.java").delete();
+        File greeting = file(input, "com/example/Greeting.java");
+        write(greeting, "package com.example; public class Greeting { public static int text() { return 1; } }");
+        greeting.setLastModified(greeting.lastModified() + 2000);
+        assertThat(compiler.compile(input, output), is(false));
+        assertThat(dirContains(output, "com/example/Unused.class"), is(false));
+    }
+
+    @Test
+    public void recompilesDependantsOfAnApiChangeOnceAFailedCompileIsFixed() throws Exception {
+        File input = directory(jcompilo, "src");
+        File output = directory(jcompilo, "fixed");
+        File greeting = file(input, "com/example/Greeting.java");
+        write(greeting, "package com.example; public class Greeting { public static String text() { return \"Hello\"; } }");
+        write(file(input, "com/example/Greeter.java"), "package com.example; public class Greeter { public Object greet() { return Greeting.text(); } }");
+        assertThat(compiler.compile(input, output), is(true));
+        File greeter = file(output, "com/example/Greeter.class");
+        greeter.setLastModified(1000000000000L);
+
+        write(greeting, "package com.example; public class Greeting { public static int text() { return 1 } }");
+        greeting.setLastModified(greeting.lastModified() + 2000);
+        assertThat(compiler.compile(input, output), is(false));
+
+        write(greeting, "package com.example; public class Greeting { public static int text() { return 1; } }");
+        greeting.setLastModified(greeting.lastModified() + 2000);
+        assertThat(compiler.compile(input, output), is(true));
+        assertThat(greeter.lastModified() == 1000000000000L, is(false));
+    }
+
+    @Test
+    public void recompilesSourcesThatInlineAChangedConstant() throws Exception {
+        File input = directory(jcompilo, "src");
+        File output = directory(jcompilo, "constants");
+        File constants = file(input, "com/example/Constants.java");
+        write(constants, "package com.example; public class Constants { public static final String GREETING = \"Hello\"; }");
+        write(file(input, "com/example/Greeter.java"), "package com.example; public class Greeter { public String greet() { return Constants.GREETING; } }");
+        assertThat(compiler.compile(input, output), is(true));
+
+        write(constants, "package com.example; public class Constants { public static final String GREETING = \"Goodbye\"; }");
+        constants.setLastModified(constants.lastModified() + 2000);
+        assertThat(compiler.compile(input, output), is(true));
+        assertThat(new String(java.nio.file.Files.readAllBytes(file(output, "com/example/Greeter.class").toPath()), "ISO-8859-1").contains("Goodbye"), is(true));
+    }
+
+    @Test
+    public void keepsUnchangedEntriesWhenRecompilingIntoAJar() throws Exception {
+        File input = directory(jcompilo, "src");
+        File output = file(jcompilo, "incremental.jar");
+        write(file(input, "com/example/Greeting.java"), "package com.example; public class Greeting { }");
+        write(file(input, "com/example/Other.java"), "package com.example; public class Other { Greeting greeting; }");
+        write(file(input, "com/example/Unrelated.java"), "package com.example; public class Unrelated { }");
+        assertThat(compiler.compile(input, output), is(true));
+
+        File other = file(input, "com/example/Other.java");
+        write(other, "package com.example; public class Other { Greeting greeting; int count; }");
+        other.setLastModified(other.lastModified() + 2000);
+        assertThat(compiler.compile(input, output), is(true));
+        assertThat(jarContains(output, "com/example/Greeting.class"), is(true));
+        assertThat(jarContains(output, "com/example/Other.class"), is(true));
+        assertThat(jarContains(output, "com/example/Unrelated.class"), is(true));
+    }
+
+    @Test
+    public void skipsWritingOutputsWhoseBytesAreUnchanged() throws Exception {
+        Properties properties = new Properties();
+        properties.putAll(env.properties());
+        properties.setProperty("jcompilo.output.skip", "true");
+        Compiler skipping = compiler(Environment.constructors.environment(env.workingDirectory(), properties), jars(env.workingDirectory(), "lib"));
+        File input = directory(jcompilo, "src");
+        File output = directory(jcompilo, "skipping");
+        File source = file(input, "com/example/Greeting.java");
+        write(source, "package com.example; public class Greeting { }");
+        assertThat(skipping.compile(input, output), is(true));
+        File compiled = file(output, "com/example/Greeting.class");
+        compiled.setLastModified(1000000000000L);
+
+        write(source, "package com.example; public class Greeting { } // comment");
+        source.setLastModified(source.lastModified() + 2000);
+        assertThat(skipping.compile(input, output), is(true));
+        assertThat(compiled.lastModified(), is(1000000000000L));
+    }
+
+    private static void write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(Strings.bytes(content), file);
+    }
+
     public static boolean dirContains(File directory, final String name) throws FileNotFoundException {
         return file(directory, name).exists();
     }
@@ -0,0 +1,30 @@
+package com.googlecode.jcompilo;
+
+import org.junit.Test;
+
+import static com.googlecode.jcompilo.Metrics.metrics;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+public class MetricsTest {
+    @Test
+    public void exportsCountersGaugesAndHistogramsAsOpenMetrics() throws Exception {
+        Metrics metrics = metrics();
+        metrics.increment("files_compiled", 3);
+        metrics.max("output_queue_peak", 4);
+        metrics.max("output_queue_peak", 2);
+        metrics.record("test_run_milliseconds", 1);
+        metrics.record("test_run_milliseconds", 6);
+
+        assertThat(metrics.counter("files_compiled"), is(3L));
+        String text = metrics.openMetrics();
+        assertThat(text, containsString("jcompilo_files_compiled_total 3\n"));
+        assertThat(text, containsString("jcompilo_output_queue_peak 4\n"));
+        assertThat(text, containsString("jcompilo_test_run_milliseconds_bucket{le=\"1\"} 1\n"));
+        assertThat(text, containsString("jcompilo_test_run_milliseconds_bucket{le=\"7\"} 2\n"));
+        assertThat(text, containsString("jcompilo_test_run_milliseconds_sum 7\n"));
+        assertThat(text.endsWith("# EOF\n"), is(true));
+        assertThat(metrics.json(), containsString("\"files_compiled\": 3"));
+    }
+}
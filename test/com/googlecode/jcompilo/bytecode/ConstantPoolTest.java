@@ -0,0 +1,35 @@
+package com.googlecode.jcompilo.bytecode;
+
+import com.googlecode.jcompilo.Resource;
+import org.junit.Test;
+
+import static com.googlecode.jcompilo.bytecode.ConstantPool.containsUtf8;
+import static com.googlecode.jcompilo.bytecode.ConstantPool.utf8;
+import static com.googlecode.totallylazy.Sequences.one;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ConstantPoolTest {
+    @Test
+    public void findsAnnotationDescriptorsWithoutParsingTheClass() throws Exception {
+        byte[] descriptor = utf8("Ljava/lang/Deprecated;");
+        assertThat(containsUtf8(Resource.constructors.resource(Annotated.class).bytes(), one(descriptor)), is(true));
+        assertThat(containsUtf8(Resource.constructors.resource(Plain.class).bytes(), one(descriptor)), is(false));
+    }
+
+    @Test
+    public void skipsLongAndDoubleConstants() throws Exception {
+        assertThat(containsUtf8(Resource.constructors.resource(ClassWithLongAndDouble.class).bytes(), one(utf8("Ljava/lang/Deprecated;"))), is(false));
+    }
+
+    static class Annotated {
+        @Deprecated
+        void method() {
+        }
+    }
+
+    static class Plain {
+        void method() {
+        }
+    }
+}
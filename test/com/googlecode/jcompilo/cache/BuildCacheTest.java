@@ -0,0 +1,51 @@
+package com.googlecode.jcompilo.cache;
+
+import com.googlecode.jcompilo.Resource;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Date;
+import java.util.List;
+
+import static com.googlecode.jcompilo.Digests.sha1;
+import static com.googlecode.jcompilo.Resource.constructors.resource;
+import static com.googlecode.jcompilo.cache.BuildCache.buildCache;
+import static com.googlecode.jcompilo.cache.CacheServer.cacheServer;
+import static com.googlecode.jcompilo.cache.HttpRemoteCache.httpRemoteCache;
+import static com.googlecode.totallylazy.Files.emptyTemporaryDirectory;
+import static com.googlecode.totallylazy.Option.some;
+import static com.googlecode.totallylazy.Sequences.one;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class BuildCacheTest {
+    @Test
+    public void oneNodesCompileIsAnotherNodesCacheHit() throws Exception {
+        File root = emptyTemporaryDirectory("BuildCacheTest");
+        try (CacheServer server = cacheServer(new File(root, "server"), 0)) {
+            BuildCache first = buildCache(new File(root, "first"), 1024 * 1024, some((RemoteCache) httpRemoteCache(server.url(), 2000)), 2000, 1);
+            BuildCache second = buildCache(new File(root, "second"), 1024 * 1024, some((RemoteCache) httpRemoteCache(server.url(), 2000)), 2000, 1);
+            String key = sha1("key");
+
+            assertThat(second.get(key).isEmpty(), is(true));
+            first.put(key, one(resource("com/example/Foo.class", new Date(0), new byte[]{1, 2, 3})));
+            first.flush();
+
+            List<Resource> resources = second.get(key).get();
+            assertThat(resources.get(0).name(), is("com/example/Foo.class"));
+            assertThat(resources.get(0).bytes().length, is(3));
+            assertThat(second.remoteHits(), is(1L));
+            assertThat(second.get(key).isEmpty(), is(false));
+            assertThat(second.misses(), is(1L));
+        }
+    }
+
+    @Test
+    public void fallsBackToAMissWhenTheRemoteIsUnreachable() throws Exception {
+        File root = emptyTemporaryDirectory("BuildCacheTest");
+        BuildCache cache = buildCache(new File(root, "local"), 1024 * 1024, some((RemoteCache) httpRemoteCache(new URL("http://127.0.0.1:1/"), 200)), 200, 1);
+        assertThat(cache.get(sha1("missing")).isEmpty(), is(true));
+        assertThat(cache.misses(), is(1L));
+    }
+}
@@ -0,0 +1,54 @@
+package com.googlecode.jcompilo.daemon;
+
+import com.googlecode.jcompilo.Environment;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import static com.googlecode.jcompilo.Environment.constructors.environment;
+import static com.googlecode.jcompilo.daemon.BuildClient.buildClient;
+import static com.googlecode.jcompilo.daemon.BuildDaemon.buildDaemon;
+import static com.googlecode.totallylazy.Files.emptyTemporaryDirectory;
+import static com.googlecode.totallylazy.Lists.list;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class BuildDaemonTest {
+    @Test
+    public void keepsServingAfterABuildFailsAndSendsBackEachExitCode() throws Exception {
+        File project = emptyTemporaryDirectory("BuildDaemonTest");
+        Files.write(new File(project, "build.java").toPath(), ("import com.googlecode.jcompilo.Environment;\n" +
+                "import com.googlecode.jcompilo.convention.AutoBuild;\n" +
+                "public class build extends AutoBuild {\n" +
+                "    private final Environment environment;\n" +
+                "    public build(Environment environment) { super(environment); this.environment = environment; }\n" +
+                "    public boolean broken() { throw new LinkageError(\"broken build class\"); }\n" +
+                "    public boolean greet() { environment.out().println(\"Hello from the daemon\"); return true; }\n" +
+                "}\n").getBytes(UTF_8));
+
+        try (BuildDaemon daemon = buildDaemon(environment(project, port(0), System.out))) {
+            Thread thread = new Thread(daemon);
+            thread.setDaemon(true);
+            thread.start();
+
+            ByteArrayOutputStream console = new ByteArrayOutputStream();
+            Environment client = environment(project, port(daemon.port()), new PrintStream(console, true));
+            assertThat(buildClient(client).build(list("broken")).get(), is(not(0)));
+            assertThat(buildClient(client).build(list("greet")).get(), is(0));
+            assertThat(console.toString("UTF-8"), containsString("Hello from the daemon"));
+        }
+    }
+
+    private static Properties port(int port) {
+        Properties properties = new Properties(System.getProperties());
+        properties.setProperty("jcompilo.daemon.port", String.valueOf(port));
+        return properties;
+    }
+}
@@ -0,0 +1,62 @@
+package com.googlecode.jcompilo.snapshot;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.googlecode.jcompilo.snapshot.Snapshot.snapshot;
+import static com.googlecode.totallylazy.Files.emptyTemporaryDirectory;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class SnapshotTest {
+    @Test
+    public void onlyReportsFilesWhoseContentChangedAddedOrRemoved() throws Exception {
+        File root = emptyTemporaryDirectory("SnapshotTest");
+        File source = new File(root, "source");
+        File touched = write(source, "a/Touched.java", "class Touched {}");
+        File edited = write(source, "a/b/Edited.java", "class Edited {}");
+        File removed = write(source, "Removed.java", "class Removed {}");
+        File saved = new File(root, "saved.snapshot");
+        snapshot(source).save(saved);
+        Snapshot previous = Snapshot.load(saved);
+
+        touched.setLastModified(touched.lastModified() + 2000);
+        write(source, "a/b/Edited.java", "class Edited { int changed; }");
+        removed.delete();
+        write(source, "Added.java", "class Added {}");
+
+        Snapshot current = snapshot(source, previous);
+        assertThat(current.names(), is(set("Added.java", "a/Touched.java", "a/b/Edited.java")));
+        assertThat(current.changed(previous), is(set("Added.java", "Removed.java", "a/b/Edited.java")));
+        assertThat(current.modified("a/b/Edited.java"), is(edited.lastModified()));
+    }
+
+    @Test
+    public void followsSymlinkedDirectoriesWithoutLoopingForever() throws Exception {
+        File root = emptyTemporaryDirectory("SnapshotTest");
+        File source = new File(root, "source");
+        write(source, "a/Real.java", "class Real {}");
+        write(root, "shared/Linked.java", "class Linked {}");
+        Files.createSymbolicLink(new File(source, "linked").toPath(), new File(root, "shared").toPath());
+        Files.createSymbolicLink(new File(source, "a/loop").toPath(), source.toPath());
+
+        assertThat(snapshot(source).names(), is(set("a/Real.java", "linked/Linked.java")));
+    }
+
+    private static Set<String> set(String... names) {
+        return new TreeSet<String>(Arrays.asList(names));
+    }
+
+    private static File write(File root, String name, String content) throws Exception {
+        File file = new File(root, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(UTF_8));
+        return file;
+    }
+}
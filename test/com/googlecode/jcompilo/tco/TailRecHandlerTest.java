@@ -1,11 +1,17 @@
 package com.googlecode.jcompilo.tco;
 
+import com.googlecode.jcompilo.ByteClassLoader;
 import com.googlecode.jcompilo.Resource;
 import com.googlecode.totallylazy.Files;
 import com.googlecode.totallylazy.Segment;
 import com.googlecode.totallylazy.annotations.tailrec;
 import org.junit.Test;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
 import static com.googlecode.jcompilo.Resource.constructors.resource;
 import static com.googlecode.jcompilo.asm.AsmResourceHandler.asmResourceHandler;
 import static com.googlecode.jcompilo.tco.TailRecHandler.tailRecHandler;
@@ -13,6 +19,8 @@ import static com.googlecode.totallylazy.Files.file;
 import static com.googlecode.totallylazy.Segment.constructors.segment;
 import static com.googlecode.totallylazy.Segment.constructors.unique;
 import static com.googlecode.totallylazy.numbers.Numbers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 
 public class TailRecHandlerTest {
     @Test
@@ -67,4 +75,83 @@ public class TailRecHandlerTest {
             print(segment.tail());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void supportsMutuallyTailRecursiveStaticMethods() throws Exception {
+        Method isEven = postProcess(MutuallyTailRecursive.class).getDeclaredMethod("isEven", int.class);
+        isEven.setAccessible(true);
+        assertThat(isEven.invoke(null, 1000000), is((Object) true));
+    }
+
+    static class MutuallyTailRecursive {
+        @tailrec
+        static boolean isEven(int number) {
+            if (number == 0) return true;
+            return isOdd(number - 1);
+        }
+
+        @tailrec
+        static boolean isOdd(int number) {
+            if (number == 0) return false;
+            return isEven(number - 1);
+        }
+    }
+
+    @Test
+    public void supportsMutuallyTailRecursivePrivateMethods() throws Exception {
+        Class<?> aClass = postProcess(Words.class);
+        Method count = aClass.getDeclaredMethod("count", String.class);
+        count.setAccessible(true);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 100000; i++) input.append("ab ");
+        Constructor<?> constructor = aClass.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        assertThat(count.invoke(constructor.newInstance(), input.toString()), is((Object) 100000));
+    }
+
+    static class Words {
+        int count(String input) {
+            return space(input, 0, 0);
+        }
+
+        @tailrec
+        private int space(String input, int index, int words) {
+            if (index == input.length()) return words;
+            if (input.charAt(index) == ' ') return space(input, index + 1, words);
+            return word(input, index + 1, words + 1);
+        }
+
+        @tailrec
+        private int word(String input, int index, int words) {
+            if (index == input.length()) return words;
+            if (input.charAt(index) == ' ') return space(input, index + 1, words);
+            return word(input, index + 1, words);
+        }
+    }
+
+    @Test
+    public void matchesOverloadsOnTheirDescriptor() throws Exception {
+        Method sum = postProcess(Overloaded.class).getDeclaredMethod("sum", int.class, long.class);
+        sum.setAccessible(true);
+        assertThat(sum.invoke(null, 1000000, 0L), is((Object) 500000500000L));
+    }
+
+    static class Overloaded {
+        @tailrec
+        static long sum(int number, long total) {
+            if (number == 0) return total;
+            return sum(number - 1, total + sum(number));
+        }
+
+        static long sum(int number) {
+            return number;
+        }
+    }
+
+    private static Class<?> postProcess(Class<?> aClass) throws Exception {
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        for (Resource resource : asmResourceHandler().add(tailrec.class, tailRecHandler()).handle(resource(aClass)))
+            classes.put(resource.name(), resource.bytes());
+        return new ByteClassLoader(classes, null).loadClass(aClass.getName());
+    }
+}